@@ -0,0 +1,232 @@
+package com.hmdp.cdc;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.NegativeCache;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopSearchEngine;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.ShopTypeCatalog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 基于行变更事件的缓存失效流水线
+ * 把tb_shop、tb_blog、tb_shop_type的行变更映射为缓存key、GEO成员和布隆过滤器条目，
+ * 在一个时间窗口内合并后批量执行，批量更新不会变成成千上万次单独的DEL
+ */
+@Slf4j
+@Component
+public class CacheInvalidationPipeline {
+
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+    @Resource
+    private NegativeCache negativeCache;
+    @Resource
+    private ShopTypeCatalog shopTypeCatalog;
+    @Resource
+    private ShopSearchEngine shopSearchEngine;
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ObjectProvider<RowChangeSource> rowChangeSource;
+
+    @Value("${hmdp.cdc.flush-interval-ms:100}")
+    private long flushIntervalMs;
+    @Value("${hmdp.cdc.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    private final Object lock = new Object();
+    // 窗口内待删除的缓存key
+    private Set<String> pendingKeys = new HashSet<>();
+    // 窗口内的GEO变更：geoKey -> member -> 坐标，坐标为null表示删除
+    private Map<String, Map<String, Point>> pendingGeo = new HashMap<>();
+    // 窗口内新增的店铺id
+    private Set<Long> pendingBloom = new HashSet<>();
+
+    private ScheduledExecutorService scheduler;
+    private RowChangeSource source;
+
+    @PostConstruct
+    public void init(){
+        source = rowChangeSource.getIfAvailable();
+        if (source == null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "cdc-flush"));
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        source.start(this::accept);
+        log.info("缓存失效流水线已启动，事件来源：{}", source.getClass().getSimpleName());
+    }
+
+    @PreDestroy
+    public void destroy(){
+        if (source == null) {
+            return;
+        }
+        source.stop();
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * 接收行变更事件，映射为待执行的失效操作
+     * @param event
+     */
+    public void accept(RowChangeEvent event){
+        int size;
+        synchronized (lock) {
+            switch (event.getTable()) {
+                case "tb_shop":
+                    mapShop(event);
+                    break;
+                case "tb_blog":
+                    pendingKeys.add(CACHE_BLOG_KEY + idOf(event));
+                    break;
+                case "tb_shop_type":
+                    // 商铺类型整体缓存为一个列表
+                    pendingKeys.add(CACHE_SHOP_TYPE_KEY);
+                    break;
+                default:
+                    return;
+            }
+            size = pendingKeys.size() + pendingBloom.size();
+        }
+        // 窗口内积压过多，立即执行
+        if (size >= maxBatchSize) {
+            flushQuietly();
+        }
+    }
+
+    private void mapShop(RowChangeEvent event){
+        Long id = idOf(event);
+        // 1.店铺缓存和响应缓存
+        pendingKeys.add(CACHE_SHOP_KEY + id);
+        pendingKeys.add(CACHE_SHOP_RESPONSE_KEY + id);
+        Map<String, Object> before = event.getBefore();
+        Map<String, Object> after = event.getAfter();
+        // 2.GEO：类型变化或删除时从旧类型移除，新增或更新时写入新坐标
+        if (before != null && before.get("type_id") != null
+                && (after == null || !Objects.equals(str(before.get("type_id")), str(after.get("type_id"))))) {
+            pendingGeo.computeIfAbsent(SHOP_GEO_KEY + str(before.get("type_id")), k -> new HashMap<>())
+                    .put(id.toString(), null);
+        }
+        if (after != null && after.get("type_id") != null && after.get("x") != null && after.get("y") != null) {
+            Point point = new Point(num(after.get("x")), num(after.get("y")));
+            pendingGeo.computeIfAbsent(SHOP_GEO_KEY + str(after.get("type_id")), k -> new HashMap<>())
+                    .put(id.toString(), point);
+        }
+        // 3.布隆过滤器：新增店铺
+        if (RowChangeEvent.INSERT.equals(event.getType())) {
+            pendingBloom.add(id);
+        }
+        // 4.搜索索引、空间索引：内存操作，直接更新
+        if (after == null) {
+            shopSearchEngine.remove(id);
+            shopSpatialIndex.remove(id);
+        } else {
+            Shop shop = BeanUtil.fillBeanWithMap(after, new Shop(), true, true);
+            shopSearchEngine.index(shop);
+            shopSpatialIndex.index(shop);
+        }
+    }
+
+    /**
+     * 执行窗口内合并后的失效操作
+     */
+    public void flush(){
+        Set<String> keys;
+        Map<String, Map<String, Point>> geo;
+        Set<Long> bloom;
+        synchronized (lock) {
+            if (pendingKeys.isEmpty() && pendingGeo.isEmpty() && pendingBloom.isEmpty()) {
+                return;
+            }
+            keys = pendingKeys;
+            geo = pendingGeo;
+            bloom = pendingBloom;
+            pendingKeys = new HashSet<>();
+            pendingGeo = new HashMap<>();
+            pendingBloom = new HashSet<>();
+        }
+        // 1.一次DEL删除所有key，一条消息通知各节点清理L1
+        cacheClient.deleteBatch(keys);
+        // 2.一个pipeline执行所有GEO变更
+        if (!geo.isEmpty()) {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, Map<String, Point>> entry : geo.entrySet()) {
+                    byte[] geoKey = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    List<byte[]> removes = new ArrayList<>();
+                    Map<byte[], Point> adds = new HashMap<>();
+                    entry.getValue().forEach((member, point) -> {
+                        if (point == null) {
+                            removes.add(member.getBytes(StandardCharsets.UTF_8));
+                        } else {
+                            adds.put(member.getBytes(StandardCharsets.UTF_8), point);
+                        }
+                    });
+                    if (!removes.isEmpty()) {
+                        connection.zSetCommands().zRem(geoKey, removes.toArray(new byte[0][]));
+                    }
+                    if (!adds.isEmpty()) {
+                        connection.geoCommands().geoAdd(geoKey, adds);
+                    }
+                }
+                return null;
+            });
+        }
+        // 2.1.商铺类型变化，递增版本号通知各节点刷新目录
+        if (keys.contains(CACHE_SHOP_TYPE_KEY)) {
+            shopTypeCatalog.invalidate();
+        }
+        // 3.写入布隆过滤器，清除空值位图中的标记
+        bloom.forEach(id -> {
+            shopBloomFilter.add(id);
+            negativeCache.remove(CACHE_SHOP_KEY, id);
+        });
+        log.debug("缓存失效批量执行：{}个key，{}个GEO集合，{}个新店铺", keys.size(), geo.size(), bloom.size());
+    }
+
+    private void flushQuietly(){
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("缓存失效批量执行异常", e);
+        }
+    }
+
+    private static Long idOf(RowChangeEvent event){
+        Map<String, Object> row = event.getAfter() != null ? event.getAfter() : event.getBefore();
+        return Long.valueOf(str(row.get("id")));
+    }
+
+    private static String str(Object value){
+        return value == null ? null : value.toString();
+    }
+
+    private static double num(Object value){
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble(value.toString());
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.cdc;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于文件的事件来源：持续读取JSON Lines文件中新追加的行，每行一个RowChangeEvent
+ * 可以把binlog解析工具的输出重定向到文件，也可以在测试中手动追加
+ */
+@Slf4j
+public class FileRowChangeSource implements RowChangeSource {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String path;
+    private final long pollIntervalMs;
+    private long position;
+    private ScheduledExecutorService scheduler;
+
+    public FileRowChangeSource(String path, long pollIntervalMs) {
+        this.path = path;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    @Override
+    public void start(Consumer<RowChangeEvent> sink) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cdc-file-source");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> poll(sink), 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll(Consumer<RowChangeEvent> sink) {
+        try (FileInputStream in = new FileInputStream(path)) {
+            FileChannel channel = in.getChannel();
+            // 文件被截断或轮转，从头开始
+            if (channel.size() < position) {
+                position = 0;
+            }
+            channel.position(position);
+            // 按块读取并自己切分行，position只在读到完整的一行（以\n结尾）后前进
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    line.write(buffer, start, i - start);
+                    start = i + 1;
+                    position += line.size() + 1;
+                    String json = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                    line.reset();
+                    if (StrUtil.isNotBlank(json)) {
+                        sink.accept(JSONUtil.toBean(json, RowChangeEvent.class));
+                    }
+                }
+                line.write(buffer, start, n - start);
+            }
+            // line中剩下的是还没写完整的最后一行，下次从它的行首再读
+        } catch (IOException e) {
+            log.debug("读取行变更文件失败：{}", e.getMessage());
+        } catch (Exception e) {
+            log.error("处理行变更事件异常", e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
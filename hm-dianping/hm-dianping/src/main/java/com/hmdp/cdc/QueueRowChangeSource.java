@@ -0,0 +1,57 @@
+package com.hmdp.cdc;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于内存队列的事件来源，用于测试和本地调试
+ */
+@Slf4j
+public class QueueRowChangeSource implements RowChangeSource {
+
+    private final BlockingQueue<RowChangeEvent> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread worker;
+
+    /**
+     * 投递事件
+     * @param event
+     */
+    public void publish(RowChangeEvent event) {
+        queue.add(event);
+    }
+
+    @Override
+    public void start(Consumer<RowChangeEvent> sink) {
+        running = true;
+        worker = new Thread(() -> {
+            while (running) {
+                try {
+                    RowChangeEvent event = queue.poll(1, TimeUnit.SECONDS);
+                    if (event != null) {
+                        sink.accept(event);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    log.error("处理行变更事件异常", e);
+                }
+            }
+        }, "cdc-queue-source");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.cdc;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 行变更事件，字段与binlog解析工具（Canal/Debezium）的输出对应，列名为数据库列名
+ */
+@Data
+public class RowChangeEvent {
+    public static final String INSERT = "INSERT";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+
+    /**
+     * 表名，例如 tb_shop
+     */
+    private String table;
+    /**
+     * 变更类型：INSERT/UPDATE/DELETE
+     */
+    private String type;
+    /**
+     * 变更前的行，INSERT时为空
+     */
+    private Map<String, Object> before;
+    /**
+     * 变更后的行，DELETE时为空
+     */
+    private Map<String, Object> after;
+}
@@ -0,0 +1,21 @@
+package com.hmdp.cdc;
+
+import java.util.function.Consumer;
+
+/**
+ * 行变更事件来源
+ * 生产环境对接binlog解析工具，本地和测试使用队列或文件代替
+ */
+public interface RowChangeSource {
+
+    /**
+     * 开始消费，事件交给sink处理
+     * @param sink
+     */
+    void start(Consumer<RowChangeEvent> sink);
+
+    /**
+     * 停止消费
+     */
+    void stop();
+}
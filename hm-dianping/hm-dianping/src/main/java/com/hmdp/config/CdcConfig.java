@@ -0,0 +1,29 @@
+package com.hmdp.config;
+
+import com.hmdp.cdc.FileRowChangeSource;
+import com.hmdp.cdc.QueueRowChangeSource;
+import com.hmdp.cdc.RowChangeSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CdcConfig {
+
+    // 读取JSON Lines文件中的行变更事件
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.cdc.source", havingValue = "file")
+    public RowChangeSource fileRowChangeSource(
+            @Value("${hmdp.cdc.file.path}") String path,
+            @Value("${hmdp.cdc.file.poll-interval-ms:200}") long pollIntervalMs){
+        return new FileRowChangeSource(path, pollIntervalMs);
+    }
+
+    // 内存队列，测试时直接投递事件
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.cdc.source", havingValue = "queue")
+    public RowChangeSource queueRowChangeSource(){
+        return new QueueRowChangeSource();
+    }
+}
@@ -0,0 +1,101 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopCacheWarmer;
+import com.hmdp.utils.ShopTypeCatalog;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存管理控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    @Resource
+    private ShopTypeCatalog shopTypeCatalog;
+
+    /**
+     * 查询各级缓存的命中统计
+     * @return L1/L2命中、未命中次数
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheClient.stats());
+    }
+
+    /**
+     * 查询哈希结构缓存的逻辑过期时间，不反序列化数据
+     * @param key 缓存key
+     * @return 过期时间戳（毫秒）
+     */
+    @GetMapping("/expire")
+    public Result logicalExpire(@RequestParam("key") String key) {
+        Long expire = cacheClient.getLogicalExpire(key);
+        if (expire == null) {
+            return Result.fail("缓存不存在！");
+        }
+        return Result.ok(expire);
+    }
+
+    /**
+     * 后台重建店铺布隆过滤器
+     * @return 无
+     */
+    @PostMapping("/bloom/shop/rebuild")
+    public Result rebuildShopBloom() {
+        shopBloomFilter.rebuildAsync();
+        return Result.ok();
+    }
+
+    /**
+     * 商铺类型修改后刷新各节点的目录
+     * @return 无
+     */
+    @PostMapping("/shop-type/refresh")
+    public Result refreshShopType() {
+        shopTypeCatalog.invalidate();
+        return Result.ok();
+    }
+
+    /**
+     * 后台预热店铺缓存和GEO数据
+     * @return 无
+     */
+    @PostMapping("/warmup")
+    public Result warmUp() {
+        if (!shopCacheWarmer.warmUpAsync()) {
+            return Result.fail("预热正在进行中！");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 查询预热进度
+     * @return 进度、吞吐量
+     */
+    @GetMapping("/warmup")
+    public Result warmUpProgress() {
+        return Result.ok(shopCacheWarmer.progress());
+    }
+}
@@ -1,15 +1,24 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.ResponseCache;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_RESPONSE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
 
 /**
  * <p>
@@ -26,14 +35,39 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private ResponseCache responseCache;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
      * @return 商铺详情数据
      */
     @GetMapping("/{id}")
-    public Result queryShopById(@PathVariable("id") Long id) {
-        return shopService.queryById(id);
+    public ResponseEntity<?> queryShopById(@PathVariable("id") Long id, WebRequest request, HttpServletResponse response) {
+        if (!responseCache.isEnabled()) {
+            return ResponseEntity.ok(shopService.queryById(id));
+        }
+        // 1.直接取序列化好的响应
+        ResponseCache.Entry entry = responseCache.get(CACHE_SHOP_RESPONSE_KEY + id,
+                () -> shopService.queryById(id), CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 2.客户端支持gzip时返回预先压缩的版本，两种编码使用不同的ETag
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = entry.getGzip() != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+        String etag = gzip ? entry.getGzipEtag() : entry.getEtag();
+        // 3.ETag未变化，返回304，304同样带上Vary
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.getGzip());
+        }
+        return builder.body(entry.getBody());
     }
 
     /**
@@ -43,10 +77,8 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并更新布隆过滤器
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -64,6 +96,9 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param radius 搜索半径（米）
+     * @param cursor 游标，第一页传空字符串，之后传上一页返回的cursor；不传时按页码查询
+     * @param sortBy 不传坐标时的排序字段：id（默认）、score、sold
      * @return 商铺列表
      */
     @GetMapping("/of/type")
@@ -71,27 +106,50 @@ public class ShopController {
             @RequestParam("typeId") Integer typeId,
             @RequestParam(value = "current", defaultValue = "1") Integer current,
             @RequestParam(value = "x", required = false) Double x,
-            @RequestParam(value = "y", required = false) Double y
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "radius", defaultValue = "" + SystemConstants.DEFAULT_GEO_RADIUS) Integer radius,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "sortBy", defaultValue = "id") String sortBy
     ) {
-        return shopService.queryShopByType(typeId, current, x, y);
+        return shopService.queryShopByType(typeId, current, x, y, radius, cursor, sortBy);
+    }
+
+    /**
+     * 查询附近的商铺，多个类型按距离合并，一次请求代替每个类型一次
+     * @param x 经度
+     * @param y 纬度
+     * @param typeIds 商铺类型，不传时查询所有类型
+     * @param radius 搜索半径（米）
+     * @param current 页码
+     * @param cursor 游标，第一页传空字符串，之后传上一页返回的cursor；不传时按页码查询
+     * @return 商铺列表
+     */
+    @GetMapping("/nearby")
+    public Result queryNearby(
+            @RequestParam("x") Double x,
+            @RequestParam("y") Double y,
+            @RequestParam(value = "typeIds", required = false) List<Long> typeIds,
+            @RequestParam(value = "radius", defaultValue = "" + SystemConstants.DEFAULT_GEO_RADIUS) Integer radius,
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryNearby(x, y, typeIds, radius, current, cursor);
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * @param name 商铺名称关键字
      * @param current 页码
+     * @param cursor 游标，第一页传空字符串，之后传上一页返回的cursor；不传时按页码查询
      * @return 商铺列表
      */
     @GetMapping("/of/name")
     public Result queryShopByName(
             @RequestParam(value = "name", required = false) String name,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        // 索引就绪时按相关度搜索，否则查数据库
+        return shopService.queryShopByName(name, current, cursor);
     }
 }
@@ -1,15 +1,15 @@
 package com.hmdp.controller;
 
 
-import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
-import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.ShopTypeCatalog;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -23,13 +23,22 @@ import java.util.List;
 @RequestMapping("/shop-type")
 public class ShopTypeController {
     @Resource
-    private IShopTypeService typeService;
+    private ShopTypeCatalog shopTypeCatalog;
 
     @GetMapping("list")
-    public Result queryTypeList() {
+    public ResponseEntity<byte[]> queryTypeList(WebRequest request) {
 //        List<ShopType> typeList = typeService
 //                .query().orderByAsc("sort").list();
-        List<ShopType> typeList = typeService.queryWithRedis();
-        return Result.ok(typeList);
+//        List<ShopType> typeList = typeService.queryWithRedis();
+//        return Result.ok(typeList);
+        // 直接返回内存中序列化好的快照，ETag未变化时返回304
+        ShopTypeCatalog.Snapshot snapshot = shopTypeCatalog.get();
+        if (request.checkNotModified(snapshot.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
     }
 }
@@ -0,0 +1,39 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 优惠券管理控制器，/admin/** 需要登录
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/voucher")
+public class VoucherAdminController {
+
+    @Resource
+    private IVoucherService voucherService;
+
+    /**
+     * 秒杀券补库存，同时清除各节点的售罄登记
+     * @param id 优惠券id
+     * @param amount 增加的库存，必须大于0
+     * @return 无
+     */
+    @PutMapping("/seckill/{id}/stock")
+    public Result restockSeckillVoucher(@PathVariable("id") Long id, @RequestParam("amount") Integer amount) {
+        if (amount == null || amount <= 0) {
+            return Result.fail("补充的库存必须大于0！");
+        }
+        return voucherService.restockSeckillVoucher(id, amount);
+    }
+}
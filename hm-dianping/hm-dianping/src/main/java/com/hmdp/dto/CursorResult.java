@@ -0,0 +1,13 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CursorResult {
+    // 分页结果列表
+    private List<?> list;
+    // 下一页的游标（不透明字符串），为空表示没有更多数据
+    private String cursor;
+}
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -20,6 +22,13 @@ public interface IShopService extends IService<Shop> {
      */
     Result queryById(Long id);
 
+    /**
+     * 新增商铺信息，同时写入布隆过滤器
+     * @param shop
+     * @return
+     */
+    Result saveShop(Shop shop);
+
     /**
      * 更新商铺信息，同时删除redis中的信息
      * @param shop
@@ -33,7 +42,31 @@ public interface IShopService extends IService<Shop> {
      * @param current
      * @param x
      * @param y
+     * @param radius 搜索半径（米）
+     * @param cursor 游标，不为null时按游标分页
+     * @param sortBy 不按坐标查询时的排序字段：id、score、sold
+     * @return
+     */
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Integer radius, String cursor, String sortBy);
+
+    /**
+     * 根据商铺名称关键字查询商铺信息
+     * @param name
+     * @param current 页码，cursor为null时使用
+     * @param cursor 游标，不为null时按游标分页
+     * @return
+     */
+    Result queryShopByName(String name, Integer current, String cursor);
+
+    /**
+     * 查询附近所有类型（或指定类型）的商铺，按距离合并
+     * @param x
+     * @param y
+     * @param typeIds 为空时查询所有类型
+     * @param radius 搜索半径（米）
+     * @param current 页码，cursor为null时使用
+     * @param cursor 游标，不为null时按游标分页
      * @return
      */
-    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+    Result queryNearby(Double x, Double y, List<Long> typeIds, Integer radius, Integer current, String cursor);
 }
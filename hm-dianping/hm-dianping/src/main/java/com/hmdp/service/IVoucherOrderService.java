@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -26,4 +28,11 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
      * @param voucherOrder
      */
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单：一次查询过滤已下单的用户，每个优惠券一次扣减库存，多行INSERT保存订单，
+     * 在同一个事务中完成，任何一步失败整体回滚
+     * @param voucherOrders
+     */
+    void createVoucherOrderBatch(List<VoucherOrder> voucherOrders);
 }
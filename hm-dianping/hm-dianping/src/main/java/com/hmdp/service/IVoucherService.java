@@ -17,4 +17,12 @@ public interface IVoucherService extends IService<Voucher> {
     Result queryVoucherOfShop(Long shopId);
 
     void addSeckillVoucher(Voucher voucher);
+
+    /**
+     * 秒杀券补库存，提交后同步Redis库存并清除各节点的售罄登记
+     * @param voucherId 优惠券id
+     * @param amount 增加的库存
+     * @return
+     */
+    Result restockSeckillVoucher(Long voucherId, Integer amount);
 }
@@ -14,6 +14,7 @@ import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -24,11 +25,12 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -50,6 +52,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+    @Resource
+    private CacheClient cacheClient;
+
     /**
      * 查询最近热门博客
      * @param current
@@ -133,6 +138,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             }
             // 3.2.保存用户到Redis的zset中
             stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+            // 3.3.点赞数变化，删除博客缓存
+            cacheClient.delete(CACHE_BLOG_KEY + id);
         }else {
             // 4.已点赞，取消点赞
             // 4.1.数据库点赞数 - 1
@@ -142,6 +149,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             }
             // 4.2.把用户从Redis中的set集合移除
             stringRedisTemplate.opsForZSet().remove(key, userId.toString());
+            // 4.3.点赞数变化，删除博客缓存
+            cacheClient.delete(CACHE_BLOG_KEY + id);
         }
         return Result.ok();
     }
@@ -249,9 +258,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 nextOffset = 1;
             }
         }
-        // 4.根据id查询Blog（不能使用listByIds，'in'问题）
-        String idStr = StrUtil.join(",", ids);
-        List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id, " + idStr + ")").list()
+        // 4.根据id批量查询Blog，优先走缓存，由CacheClient保证顺序（不依赖ORDER BY FIELD）
+        List<Blog> blogs = cacheClient
+                .queryBatch(CACHE_BLOG_KEY, ids, Blog.class, this::queryBlogMap, CACHE_BLOG_TTL, TimeUnit.MINUTES)
                 .stream().map(blog -> {
                     queryBlogUser(blog);
                     isBlogLiked(blog);
@@ -265,4 +274,13 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         r.setMinTime(minTime);
         return Result.ok(r);
     }
+
+    /**
+     * 根据id批量查询博客，作为批量缓存的数据库兜底
+     * @param ids
+     * @return
+     */
+    private Map<Long, Blog> queryBlogMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, blog -> blog));
+    }
 }
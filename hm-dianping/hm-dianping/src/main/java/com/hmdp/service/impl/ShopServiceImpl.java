@@ -4,17 +4,26 @@ import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CursorUtil;
+import com.hmdp.utils.GeoBandSearch;
+import com.hmdp.utils.NegativeCache;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.RebuildScheduler;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopSearchEngine;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.ShopTypeCatalog;
 import com.hmdp.utils.SystemConstants;
 import io.netty.util.internal.StringUtil;
 import org.springframework.data.geo.Distance;
@@ -26,15 +35,13 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -54,8 +61,32 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private GeoBandSearch geoBandSearch;
+
     @Resource
     private CacheClient cacheClient;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private NegativeCache negativeCache;
+
+    @Resource
+    private RebuildScheduler rebuildScheduler;
+
+    @Resource
+    private ShopSearchEngine shopSearchEngine;
+
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+
+    @Resource
+    private ShopTypeCatalog shopTypeCatalog;
+
+    // 按类型列表查询时支持的排序字段
+    private static final Set<String> SHOP_SORT_COLUMNS = new HashSet<>(Arrays.asList("id", "score", "sold"));
 //    /**
 //     * 基于Redis缓存查询
 //     * @param id
@@ -125,25 +156,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @param id
      * @return
      */
-    private BloomFilter bloomFilter;
-    @PostConstruct
-    public void init(){
-        // 初始化布隆过滤器，假设最多有1000000个店铺，误判率为0.01
-        bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
-                100000, 0.1);
-        // 预加载布隆过滤器
-        List<Shop> shopList = list();
-        for(Shop shop : shopList){
-            bloomFilter.put(CACHE_SHOP_KEY + shop.getId());
-        }
-    }
     private Boolean querySolvingPassThrough(Long id){
-        String cacheShopKey = CACHE_SHOP_KEY + id;
-        // 1.布隆过滤器过滤，不存在直接返回错误信息
-        if(!bloomFilter.mightContain(cacheShopKey)){
-            return false;
-        }
-        return true;
+        // 1.布隆过滤器（Redis中共享）过滤，不存在直接返回错误信息
+        return shopBloomFilter.mightContain(id);
     }
 
     /**
@@ -164,27 +179,30 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             // 2.1命中返回商铺信息
             return JSONUtil.toBean(shopJson, Shop.class);
         }
-        Shop shop = null;
         String lockKey = LOCK_SHOP_KEY + id;
-        Boolean isLock = tryLock(lockKey);
         try {
             // 3.未命中，尝试获取锁
-            if (!isLock) {
-                // 3.1.未获取到锁，休眠递归
+            while (!tryLock(lockKey)) {
+                // 3.1.未获取到锁，休眠后重新查询（循环代替递归，避免栈溢出）
                 Thread.sleep(50);
-                return queryWithMutex(id);
+                shopJson = stringRedisTemplate.opsForValue().get(cacheShopKey);
+                if (StrUtil.isNotBlank(shopJson)) {
+                    return JSONUtil.toBean(shopJson, Shop.class);
+                }
             }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        Shop shop;
+        try {
             // 3.2.1.获取到锁，根据id查数据库
             shop = getById(id);
-            Thread.sleep(200);
             // 3.2.2.商铺不在数据库，返回错误信息
             if(shop == null){
                 return null;
             }
             // 3.2.3.商铺在数据库，写入Redis
             stringRedisTemplate.opsForValue().set(cacheShopKey, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         } finally {
             // 4.释放互斥锁
             unlock(lockKey);
@@ -193,7 +211,6 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return shop;
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
     /**
      * 提前预热
      * @param id
@@ -232,8 +249,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             Boolean isLock = tryLock(lockKey);
             // 5.1.获取锁失败，跳过
             if(isLock){
-                // 5.2.获取锁成功，开启独立线程
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
+                // 5.2.获取锁成功，交给共享的重建调度器（去重、有界，被拒绝时释放锁）
+                rebuildScheduler.submit(cacheShopKey, () -> {
                     // 5.2.1.缓存重建
                     try {
                         this.saveShopToRedis(id, 20L);
@@ -243,7 +260,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                         // 5.2.2.释放锁
                         unlock(lockKey);
                     }
-                });
+                }, () -> unlock(lockKey));
             }
         }
         // 5.3.返回旧商铺信息
@@ -271,9 +288,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 2.1.互斥锁解决缓存击穿
         /*// 2.1.1.未使用封装工具
         Shop shop = queryWithMutex(id);*/
-        // 2.1.2.使用封装工具
+        /*// 2.1.2.使用封装工具
         Shop shop = cacheClient
                 .queryWithMutex(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById,
+                        CACHE_SHOP_TTL, TimeUnit.MINUTES, LOCK_SHOP_TTL, TimeUnit.SECONDS);*/
+        // 2.1.3.单飞加载，等待者由通知唤醒，不休眠
+        Shop shop = cacheClient
+                .queryWithSingleFlight(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById,
                         CACHE_SHOP_TTL, TimeUnit.MINUTES, LOCK_SHOP_TTL, TimeUnit.SECONDS);
 
         // 2.2.逻辑过期解决缓存击穿
@@ -283,12 +304,40 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         Shop shop = cacheClient.
                 queryWithLogicalExpire(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById,
                         CACHE_SHOP_TTL, TimeUnit.MINUTES, LOCK_SHOP_TTL, TimeUnit.SECONDS);*/
+        /*// 2.2.3.哈希结构，一次Lua调用返回数据和过期/抢锁标记（需先用setWithLogicalExpireHash预热）
+        Shop shop = cacheClient.
+                queryWithLogicalExpireHash(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById,
+                        CACHE_SHOP_TTL, TimeUnit.MINUTES, LOCK_SHOP_TTL, TimeUnit.SECONDS);*/
+
+        // 2.3.提前刷新（XFetch），热点key在过期前被平滑重建
+        /*Shop shop = cacheClient.
+                queryWithEarlyRefresh(CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById,
+                        CACHE_SHOP_TTL, TimeUnit.MINUTES, LOCK_SHOP_TTL, TimeUnit.SECONDS, 1.0);*/
         if (shop == null) {
             return Result.fail("商铺不存在！");
         }
         return Result.ok(shop);
     }
 
+    /**
+     * 新增商铺信息，同时写入布隆过滤器
+     * @param shop
+     * @return
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.写入布隆过滤器，并清除空值位图中的标记
+        shopBloomFilter.add(shop.getId());
+        negativeCache.remove(CACHE_SHOP_KEY, shop.getId());
+        // 3.写入搜索索引和空间索引
+        shopSearchEngine.index(shop);
+        shopSpatialIndex.index(shop);
+        // 4.返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     /**
      * 更新商铺信息，同时删除redis中的信息
      * @param shop
@@ -303,9 +352,25 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除redis中的信息
-        String key = RedisConstants.CACHE_SHOP_KEY + id;
-        stringRedisTemplate.delete(key);
+        // 2.事务提交后再删除redis中的信息（店铺缓存和序列化好的响应缓存），并广播各节点删除本地缓存，
+        // 避免提交前被其他请求用旧数据回填
+        List<String> keys = Arrays.asList(RedisConstants.CACHE_SHOP_KEY + id, CACHE_SHOP_RESPONSE_KEY + id);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cacheClient.deleteBatch(keys);
+                // 更新的可能只是部分字段，重新读取后更新搜索索引和空间索引
+                Shop latest = getById(id);
+                if (latest == null) {
+                    // 提交后已被删除，从两个索引中移除
+                    shopSearchEngine.remove(id);
+                    shopSpatialIndex.remove(id);
+                    return;
+                }
+                shopSearchEngine.index(latest);
+                shopSpatialIndex.index(latest);
+            }
+        });
         return Result.ok();
     }
 
@@ -315,26 +380,39 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @param current
      * @param x
      * @param y
+     * @param radius
+     * @param cursor
+     * @param sortBy
      * @return
      */
     @Override
-    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Integer radius, String cursor, String sortBy) {
         // 1.判断是否需要根据坐标查询
         if(x == null || y == null){
             // 不需要坐标查询，查询数据库
-            Page<Shop> page = query().eq("type_id", typeId)
-                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-            return Result.ok(page.getRecords());
+            return queryShopByTypeFromDb(typeId, current, cursor, sortBy);
+        }
+        // 1.1.半径由请求指定，不超过上限
+        int meters = Math.min(Math.max(radius, 1), SystemConstants.MAX_GEO_RADIUS);
+        // 1.2.传了游标，按游标分页
+        if (cursor != null) {
+            return queryShopByCursor(typeId, x, y, meters, cursor);
         }
         // 2.计算分页参数
         int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
         int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 2.1.本地空间索引就绪时直接在进程内查询，否则查Redis
+        if (shopSpatialIndex.isReady()) {
+            List<ShopSpatialIndex.Hit> hits = shopSpatialIndex.nearest(x, y, meters,
+                    new ShopSpatialIndex.Filter().setTypeId(typeId.longValue()), -1, 0, end);
+            return Result.ok(queryShopWithDistance(hits.subList(Math.min(from, hits.size()), hits.size())));
+        }
         // 3.查询Redis，按照距离排序、分页。结果为：shopId, distance
         String key = SHOP_GEO_KEY + typeId;
         GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo()
                 .search(key,
                         GeoReference.fromCoordinate(x, y),
-                        new Distance(5000),
+                        new Distance(meters),
                         RedisGeoCommands.GeoSearchCommandArgs
                                 .newGeoSearchArgs().includeDistance().limit(end)
                 );
@@ -357,12 +435,316 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             Distance distance = result.getDistance();
             distanceMap.put(shopId, distance);
         });
-        // 5.根据id查询shop
-        CharSequence idStr = StrUtil.join(",", ids);
-        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD (id, " + idStr + ")").list()
+        // 5.根据id批量查询shop，优先走缓存，未命中的一次IN查询
+        List<Shop> shops = cacheClient
+                .queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES)
                 .stream().map(shop -> shop.setDistance(distanceMap.get(shop.getId()).getValue()))
                 .collect(Collectors.toList());
         // 6.返回
         return Result.ok(shops);
     }
+
+    /**
+     * 附近商铺游标分页：游标为上一页最后一条的 (距离, id) 和已返回的条数。
+     * 本地空间索引就绪时在进程内查询，否则按距离环带查询Redis GEO（见GeoBandSearch），
+     * 每页只读取游标之后的一个环带，开销不随页的深度线性增长；每个游标的结果短暂缓存，重复滚动不再查询
+     */
+    private Result queryShopByCursor(Integer typeId, Double x, Double y, int radius, String cursor) {
+        // 1.解析游标，第一页为空
+        String[] parts = CursorUtil.parse(cursor, "D:L:L", "D:L");
+        if (StrUtil.isNotBlank(cursor) && parts == null) {
+            return Result.fail("无效的游标！");
+        }
+        double lastDist = parts == null ? -1 : Double.parseDouble(parts[0]);
+        long lastId = parts == null ? 0 : Long.parseLong(parts[1]);
+        // 已返回的条数，旧格式的游标没有该字段（-1，按默认宽度查询）
+        long offset = parts == null ? 0 : parts.length == 3 ? Long.parseLong(parts[2]) : -1;
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        List<ShopSpatialIndex.Hit> hits;
+        if (shopSpatialIndex.isReady()) {
+            // 2.本地空间索引就绪时直接在进程内查询，游标格式相同
+            hits = shopSpatialIndex.nearest(x, y, radius,
+                    new ShopSpatialIndex.Filter().setTypeId(typeId.longValue()), lastDist, lastId, size);
+        } else {
+            // 3.查询该游标的缓存页，格式为 id,距离,id,距离...
+            String pageKey = CACHE_GEO_PAGE_KEY + typeId + ":" + x + ":" + y + ":" + radius + ":" + lastDist + ":" + lastId;
+            String cached = stringRedisTemplate.opsForValue().get(pageKey);
+            if (cached != null) {
+                hits = parseHits(cached);
+            } else {
+                // 4.未命中，查询游标之后的环带
+                hits = geoBandSearch.search(Collections.singletonList(SHOP_GEO_KEY + typeId),
+                        x, y, radius, lastDist, lastId, offset, size);
+                stringRedisTemplate.opsForValue().set(pageKey, joinHits(hits), CACHE_GEO_PAGE_TTL, TimeUnit.MINUTES);
+            }
+        }
+        // 5.根据id批量查询shop，满一页才有下一页
+        CursorResult r = new CursorResult();
+        r.setList(queryShopWithDistance(hits));
+        if (hits.size() == size) {
+            ShopSpatialIndex.Hit last = hits.get(hits.size() - 1);
+            r.setCursor(CursorUtil.encode(last.getDistance(), last.getId(), nextOffset(offset, size)));
+        }
+        return Result.ok(r);
+    }
+
+    private static String joinHits(List<ShopSpatialIndex.Hit> hits) {
+        StringBuilder sb = new StringBuilder();
+        for (ShopSpatialIndex.Hit hit : hits) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(hit.getId()).append(',').append(hit.getDistance());
+        }
+        return sb.toString();
+    }
+
+    private static List<ShopSpatialIndex.Hit> parseHits(String page) {
+        if (page.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] items = page.split(",");
+        List<ShopSpatialIndex.Hit> hits = new ArrayList<>(items.length / 2);
+        for (int i = 0; i + 1 < items.length; i += 2) {
+            hits.add(new ShopSpatialIndex.Hit(Long.parseLong(items[i]), Double.parseDouble(items[i + 1])));
+        }
+        return hits;
+    }
+
+    // 下一页游标中的已返回条数，未知时保持未知
+    private static long nextOffset(long offset, int size) {
+        return offset < 0 ? -1 : offset + size;
+    }
+
+    /**
+     * 附近商铺（多类型）：空间索引就绪时每个类型按距离有序返回一批，再用大小为类型数的堆做k路归并；
+     * 否则按距离环带一次查询所有类型的GEO集合，只查询最终一页的店铺
+     * @param x
+     * @param y
+     * @param typeIds
+     * @param radius
+     * @param current
+     * @param cursor
+     * @return
+     */
+    @Override
+    public Result queryNearby(Double x, Double y, List<Long> typeIds, Integer radius, Integer current, String cursor) {
+        // 1.未指定类型时查询所有类型
+        List<Long> types = typeIds == null || typeIds.isEmpty()
+                ? shopTypeCatalog.get().getList().stream().map(ShopType::getId).collect(Collectors.toList())
+                : typeIds;
+        int meters = Math.min(Math.max(radius, 1), SystemConstants.MAX_GEO_RADIUS);
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 2.解析游标，游标为 (距离, id, 已返回的条数)，每个类型在游标之前的条数都不超过该值
+        String[] parts = CursorUtil.parse(cursor, "D:L:L", "D:L");
+        if (StrUtil.isNotBlank(cursor) && parts == null) {
+            return Result.fail("无效的游标！");
+        }
+        double lastDist = parts == null ? -1 : Double.parseDouble(parts[0]);
+        long lastId = parts == null ? 0 : Long.parseLong(parts[1]);
+        long offset = parts == null ? 0 : parts.length == 3 ? Long.parseLong(parts[2]) : -1;
+        // 按页码查询时需要前 current * size 条，按游标查询时只需要一页
+        int skip = cursor == null ? (current - 1) * size : 0;
+        int need = skip + size;
+        // 3.按 (距离, id) 有序取前need条
+        List<ShopSpatialIndex.Hit> merged;
+        if (shopSpatialIndex.isReady()) {
+            // 3.1.每个类型一个有序的流，k路归并
+            List<List<ShopSpatialIndex.Hit>> streams = new ArrayList<>(types.size());
+            for (Long typeId : types) {
+                streams.add(shopSpatialIndex.nearest(x, y, meters, new ShopSpatialIndex.Filter().setTypeId(typeId),
+                        lastDist, lastId, need));
+            }
+            merged = mergeByDistance(streams, need);
+        } else {
+            // 3.2.所有类型的GEO集合在同一个环带内查询，结果已按距离有序
+            List<String> keys = types.stream().map(typeId -> SHOP_GEO_KEY + typeId).collect(Collectors.toList());
+            merged = geoBandSearch.search(keys, x, y, meters, lastDist, lastId, offset, need);
+        }
+        // 4.跳过页码之前的条数
+        List<ShopSpatialIndex.Hit> hits = merged.subList(Math.min(skip, merged.size()), merged.size());
+        List<Shop> shops = queryShopWithDistance(hits);
+        // 5.只传页码时返回列表
+        if (cursor == null) {
+            return Result.ok(shops);
+        }
+        CursorResult r = new CursorResult();
+        r.setList(shops);
+        if (hits.size() == size) {
+            ShopSpatialIndex.Hit last = hits.get(hits.size() - 1);
+            r.setCursor(CursorUtil.encode(last.getDistance(), last.getId(), nextOffset(offset, size)));
+        }
+        return Result.ok(r);
+    }
+
+    // k路归并：堆中每个流只放当前的头部元素，内存只与流的个数有关
+    static List<ShopSpatialIndex.Hit> mergeByDistance(List<List<ShopSpatialIndex.Hit>> streams, int limit) {
+        // 元素为 {流的下标, 流中的位置}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(streams.size(), 1),
+                (a, b) -> streams.get(a[0]).get(a[1]).compareTo(streams.get(b[0]).get(b[1])));
+        for (int i = 0; i < streams.size(); i++) {
+            if (!streams.get(i).isEmpty()) {
+                heap.offer(new int[]{i, 0});
+            }
+        }
+        List<ShopSpatialIndex.Hit> merged = new ArrayList<>(limit);
+        while (!heap.isEmpty() && merged.size() < limit) {
+            int[] head = heap.poll();
+            List<ShopSpatialIndex.Hit> stream = streams.get(head[0]);
+            merged.add(stream.get(head[1]));
+            if (head[1] + 1 < stream.size()) {
+                heap.offer(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
+    }
+
+    // 按空间索引的结果批量查询店铺，并填充距离
+    private List<Shop> queryShopWithDistance(List<ShopSpatialIndex.Hit> hits) {
+        List<Long> ids = new ArrayList<>(hits.size());
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size());
+        for (ShopSpatialIndex.Hit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
+        }
+        return cacheClient
+                .queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES)
+                .stream().map(shop -> shop.setDistance(distanceMap.get(shop.getId())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 根据商铺名称关键字查询商铺信息
+     * 索引就绪时走内存倒排索引，按相关度排序；关键字为空或索引未就绪时查数据库
+     * @param name
+     * @param current
+     * @param cursor
+     * @return
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current, String cursor) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        String[] parts = CursorUtil.parse(cursor, "rank:I:L", "db:L");
+        if (StrUtil.isNotBlank(cursor) && parts == null) {
+            return Result.fail("无效的游标！");
+        }
+        // 1.关键字为空、索引未就绪，或者游标来自数据库查询，查数据库
+        boolean byDb = StrUtil.isBlank(name) || !shopSearchEngine.isReady()
+                || (parts != null && "db".equals(parts[0]));
+        if (byDb) {
+            return queryShopByNameFromDb(name, current, cursor, parts, size);
+        }
+        // 2.按游标分页：游标为 (rank, 相关度, id)
+        ShopSearchEngine.Hit after = null;
+        if (parts != null) {
+            after = new ShopSearchEngine.Hit(Long.parseLong(parts[2]), Integer.parseInt(parts[1]));
+        }
+        int skip = cursor == null ? (current - 1) * size : 0;
+        List<ShopSearchEngine.Hit> hits = shopSearchEngine.search(name, after, skip, size);
+        // 3.查询店铺，走批量缓存
+        List<Long> ids = hits.stream().map(ShopSearchEngine.Hit::getId).collect(Collectors.toList());
+        List<Shop> shops = cacheClient
+                .queryBatch(CACHE_SHOP_KEY, ids, Shop.class, this::queryShopMap, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        // 4.只传页码时保持原来的返回格式
+        if (cursor == null) {
+            return Result.ok(shops);
+        }
+        CursorResult r = new CursorResult();
+        r.setList(shops);
+        if (hits.size() == size) {
+            ShopSearchEngine.Hit last = hits.get(hits.size() - 1);
+            r.setCursor(CursorUtil.encode("rank", last.getRelevance(), last.getId()));
+        }
+        return Result.ok(r);
+    }
+
+    /**
+     * 按类型列表查询，不做COUNT：只传页码时按页码查询，传了游标时按 (排序字段, id) 做keyset分页，
+     * 依赖 (type_id, score, id)、(type_id, sold, id) 索引，深分页也不需要扫描跳过的行
+     */
+    private Result queryShopByTypeFromDb(Integer typeId, Integer current, String cursor, String sortBy) {
+        // 1.校验排序字段，id升序，评分、销量降序
+        if (!SHOP_SORT_COLUMNS.contains(sortBy)) {
+            return Result.fail("不支持的排序字段！");
+        }
+        boolean byId = "id".equals(sortBy);
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        // 2.只传页码，保持原来的返回格式，第三个参数关闭COUNT查询
+        if (cursor == null) {
+            Page<Shop> page = query().eq("type_id", typeId)
+                    .orderByDesc(!byId, sortBy).orderBy(true, byId, "id")
+                    .page(new Page<>(current, size, false));
+            return Result.ok(page.getRecords());
+        }
+        // 3.解析游标：(排序字段, 排序值, id)，第一页传空字符串
+        String[] parts = CursorUtil.parse(cursor, sortBy + ":L:L");
+        if (StrUtil.isNotBlank(cursor) && parts == null) {
+            return Result.fail("无效的游标！");
+        }
+        QueryChainWrapper<Shop> wrapper = query().eq("type_id", typeId);
+        if (parts != null) {
+            long lastId = Long.parseLong(parts[2]);
+            if (byId) {
+                wrapper.gt("id", lastId);
+            } else {
+                // (sortBy, id) < (lastValue, lastId)
+                long lastValue = Long.parseLong(parts[1]);
+                wrapper.and(w -> w.lt(sortBy, lastValue)
+                        .or(o -> o.eq(sortBy, lastValue).lt("id", lastId)));
+            }
+        }
+        List<Shop> shops = wrapper
+                .orderByDesc(!byId, sortBy).orderBy(true, byId, "id")
+                .last("LIMIT " + size)
+                .list();
+        // 4.返回本页数据和下一页游标
+        CursorResult r = new CursorResult();
+        r.setList(shops);
+        if (shops.size() == size) {
+            Shop last = shops.get(shops.size() - 1);
+            Object value = byId ? last.getId() : "score".equals(sortBy) ? last.getScore() : last.getSold();
+            r.setCursor(CursorUtil.encode(sortBy, value, last.getId()));
+        }
+        return Result.ok(r);
+    }
+
+    // 数据库模糊查询，按游标分页时以id为游标，不做COUNT
+    private Result queryShopByNameFromDb(String name, Integer current, String cursor, String[] parts, int size) {
+        if (cursor == null) {
+            // 根据名称分页查询，第三个参数关闭COUNT查询，LIKE '%name%' 的COUNT同样要扫描全表
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, size, false));
+            // 返回数据
+            return Result.ok(page.getRecords());
+        }
+        long lastId = 0;
+        if (parts != null) {
+            // 索引不可用时不能继续相关度游标
+            if (!"db".equals(parts[0])) {
+                return Result.fail("无效的游标！");
+            }
+            lastId = Long.parseLong(parts[1]);
+        }
+        List<Shop> shops = query()
+                .like(StrUtil.isNotBlank(name), "name", name)
+                .gt("id", lastId).orderByAsc("id")
+                .last("LIMIT " + size)
+                .list();
+        CursorResult r = new CursorResult();
+        r.setList(shops);
+        if (shops.size() == size) {
+            r.setCursor(CursorUtil.encode("db", shops.get(shops.size() - 1).getId()));
+        }
+        return Result.ok(r);
+    }
+
+    /**
+     * 根据id批量查询店铺，作为批量缓存的数据库兜底
+     * @param ids
+     * @return
+     */
+    private Map<Long, Shop> queryShopMap(List<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, shop -> shop));
+    }
 }
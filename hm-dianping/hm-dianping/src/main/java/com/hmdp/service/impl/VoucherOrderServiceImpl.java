@@ -7,31 +7,50 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.OrderPartitionRegistry;
+import com.hmdp.utils.OrderStreamRecovery;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.RedisSystemException;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
 
 @Slf4j
 @Service
@@ -45,6 +64,29 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private RedissonClient redissonClient;
+    @Resource
+    private OrderPartitionRegistry orderPartitionRegistry;
+    @Resource
+    private OrderStreamRecovery orderStreamRecovery;
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
+    // 订单流的分区数，所有节点必须一致
+    @Value("${hmdp.order.partitions:4}")
+    private int partitions;
+    // 每个分区的消费线程数
+    @Value("${hmdp.order.threads-per-partition:1}")
+    private int threadsPerPartition;
+    // 认领空闲消息的周期
+    @Value("${hmdp.order.recovery.interval-seconds:10}")
+    private long recoveryIntervalSeconds;
+
+    // 每次最多读取的订单数，为1时逐条处理
+    @Value("${hmdp.order.batch-size:100}")
+    private int batchSize;
+    // 读到第一条订单后最多再等待的时间，用于凑满一批
+    @Value("${hmdp.order.batch-wait-ms:50}")
+    private long batchWaitMs;
 
     // lua脚本：判断是否具有秒杀资格
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
@@ -54,40 +96,159 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);
     }
 
-    // 代理对象
+    // 秒杀脚本返回值对应的错误信息：1库存不足，2重复下单，3尚未开始，4已经结束
+    private static final String[] SECKILL_FAIL_MESSAGES = {"", "库存不足！", "一人一单！", "秒杀尚未开始！", "秒杀已经结束！"};
+
+    // 代理对象（事务），启动时注入，消费线程在处理第一个秒杀请求之前就可能需要它
+    @Resource
+    @Lazy
     private IVoucherOrderService proxy;
 
-    // 完成异步下单的线程
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    // 完成异步下单的线程，线程数随本节点负责的分区变化
+    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newCachedThreadPool();
+    // 定期心跳并重新分配分区
+    private ScheduledExecutorService rebalanceScheduler;
+    // 定期认领本节点分区中空闲超时的消息
+    private ScheduledExecutorService recoveryScheduler;
+    // 本节点正在消费的分区及其消费线程
+    private final Map<Integer, List<VoucherOrderHandler>> handlers = new ConcurrentHashMap<>();
 
     // 异步下单在初始化完就执行
     @PostConstruct
     private void init(){
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        rebalanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-rebalance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = orderPartitionRegistry.getHeartbeatSeconds();
+        rebalanceScheduler.scheduleWithFixedDelay(this::rebalance, 0, interval, TimeUnit.SECONDS);
+        recoveryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recoveryScheduler.scheduleWithFixedDelay(this::recover, recoveryIntervalSeconds, recoveryIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy(){
+        rebalanceScheduler.shutdownNow();
+        recoveryScheduler.shutdownNow();
+        handlers.values().forEach(list -> list.forEach(VoucherOrderHandler::stop));
+        orderPartitionRegistry.leave();
+        SECKILL_ORDER_EXECUTOR.shutdown();
+    }
+
+    // 心跳并按最新的成员表调整本节点消费的分区
+    private void rebalance(){
+        try {
+            Set<Integer> owned = orderPartitionRegistry.heartbeat(partitions);
+            // 1.停止不再负责的分区，未确认的消息留在该消费者的PendingList中
+            handlers.keySet().removeIf(p -> {
+                if (owned.contains(p)) {
+                    return false;
+                }
+                handlers.get(p).forEach(VoucherOrderHandler::stop);
+                log.info("订单流分区{}已移交", p);
+                return true;
+            });
+            // 2.启动新分配的分区，消费者名在本节点内固定，重新分配回来时先处理自己的PendingList
+            for (Integer p : owned) {
+                handlers.computeIfAbsent(p, key -> {
+                    List<VoucherOrderHandler> list = new ArrayList<>(threadsPerPartition);
+                    for (int i = 0; i < threadsPerPartition; i++) {
+                        VoucherOrderHandler handler = new VoucherOrderHandler(
+                                SECKILL_ORDER_STREAM_KEY + key, orderPartitionRegistry.getMemberId() + "-" + key + "-" + i);
+                        list.add(handler);
+                        SECKILL_ORDER_EXECUTOR.submit(handler);
+                    }
+                    log.info("开始消费订单流分区{}，线程数：{}", key, threadsPerPartition);
+                    return list;
+                });
+            }
+        } catch (Exception e) {
+            log.error("订单流分区重新分配失败", e);
+        }
+    }
+
+    // 认领本节点负责的分区中空闲超时的消息（包括其他节点、已宕机消费者的），重新处理或转入死信流
+    private void recover(){
+        Set<String> members;
+        try {
+            members = orderPartitionRegistry.members();
+        } catch (Exception e) {
+            log.error("查询订单消费者成员失败", e);
+            return;
+        }
+        for (Integer p : handlers.keySet()) {
+            String stream = SECKILL_ORDER_STREAM_KEY + p;
+            try {
+                // 1.认领消息，超过重试次数的已转入死信流
+                List<OrderStreamRecovery.Claimed> claimed = orderStreamRecovery.claim(
+                        stream, orderPartitionRegistry.getMemberId() + "-" + p + "-recovery");
+                // 2.逐条重新处理
+                for (OrderStreamRecovery.Claimed message : claimed) {
+                    try {
+                        VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(message.getValues(), new VoucherOrder(), true);
+                        handleVoucherOrder(voucherOrder);
+                        stringRedisTemplate.opsForStream().acknowledge(stream, OrderStreamRecovery.GROUP, message.getId());
+                        orderStreamRecovery.recovered(stream, message.getId());
+                    } catch (Exception e) {
+                        log.error("恢复订单消息失败，stream:{}, id:{}, deliveries:{}", stream, message.getId(), message.getDeliveries(), e);
+                        orderStreamRecovery.failed(stream, message.getId(), e);
+                    }
+                }
+                // 3.已下线节点的消息认领完后，删除其消费者
+                orderStreamRecovery.removeDeadConsumers(stream, members);
+                // 4.刷新待确认消息数和滞后时间
+                orderStreamRecovery.refreshMetrics(stream);
+            } catch (Exception e) {
+                log.error("订单流分区{}恢复失败", p, e);
+            }
+        }
+    }
+
+    // 创建消费者组，流不存在时一并创建（MKSTREAM），新分区从头消费
+    private void createGroup(String queueName) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(queueName.getBytes(StandardCharsets.UTF_8), "g1", ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            // 如果组已存在，忽略该错误
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;  // 其他异常继续抛出
+            }
+        }
     }
 
     private class VoucherOrderHandler implements Runnable{
-        private String QUEUE_NAME = "stream.orders";
+        private final String QUEUE_NAME;
+        // 消费者名：节点成员id-分区-线程序号，各节点、各线程互不相同
+        private final String consumerName;
+        private volatile boolean running = true;
+
+        VoucherOrderHandler(String queueName, String consumerName) {
+            this.QUEUE_NAME = queueName;
+            this.consumerName = consumerName;
+        }
+
+        void stop() {
+            running = false;
+        }
+
         // 完成异步下单
         @Override
         public void run() {
-            // 检查并创建消费者组，避免流不存在的问题
-            try {
-                stringRedisTemplate.opsForStream().createGroup(QUEUE_NAME, ReadOffset.latest(), "g1");
-            } catch (RedisSystemException e) {
-                // 如果组已存在，忽略该错误
-                if (e.getMessage().contains("BUSYGROUP")) {
-                    log.info("Consumer group 'g1' already exists.");
-                } else {
-                    throw e;  // 其他异常继续抛出
-                }
-            }
-            while (true){
+            createGroup(QUEUE_NAME);
+            // 先处理本消费者上次未确认的消息
+            handlePendingList();
+            while (running){
                 try {
                     // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.orders >
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            Consumer.from("g1", consumerName),
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
                             StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
                     );
                     // 2.判断消息获取是否成功
@@ -95,6 +256,11 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         // 2.1.获取失败，继续下一次循环
                         continue;
                     }
+                    // 2.2.批量模式：凑满一批或等待超时后批量下单
+                    if (batchSize > 1) {
+                        handleBatch(fillBatch(list));
+                        continue;
+                    }
                     // 3.解析消息中的订单信息
                     MapRecord<String, Object, Object> record = list.get(0);
                     Map<Object, Object> values = record.getValue();
@@ -115,24 +281,89 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
             }
         }
 
-        // 处理PendingList中消息
-        private void handlePendingList() {
-            // 检查并创建消费者组，避免流不存在的问题
+        // 读到第一批订单后，在batchWaitMs内继续读取，直到凑满batchSize条
+        private List<MapRecord<String, Object, Object>> fillBatch(List<MapRecord<String, Object, Object>> first) {
+            List<MapRecord<String, Object, Object>> batch = new ArrayList<>(first);
+            long deadline = System.currentTimeMillis() + batchWaitMs;
+            long remaining;
+            while (batch.size() < batchSize && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                // XREADGROUP GROUP g1 c1 COUNT n BLOCK remaining STREAMS stream.orders >
+                List<MapRecord<String, Object, Object>> more = stringRedisTemplate.opsForStream().read(
+                        Consumer.from("g1", consumerName),
+                        StreamReadOptions.empty().count(batchSize - batch.size()).block(Duration.ofMillis(remaining)),
+                        StreamOffset.create(QUEUE_NAME, ReadOffset.lastConsumed())
+                );
+                if (more == null || more.isEmpty()) {
+                    break;
+                }
+                batch.addAll(more);
+            }
+            return batch;
+        }
+
+        // 批量下单，一次XACK确认整批；失败时逐条处理，逐条失败的消息留在PendingList，由恢复任务认领
+        private void handleBatch(List<MapRecord<String, Object, Object>> batch) {
+            List<VoucherOrder> orders = batch.stream()
+                    .map(record -> BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true))
+                    .collect(Collectors.toList());
+            // 1.按用户加锁，与逐条下单是同一把锁：多线程消费或消息重复投递时，同一用户的订单不会并发通过一人一单的校验
+            Map<Long, RLock> locks = new HashMap<>();
+            boolean[] accepted = new boolean[orders.size()];
+            List<VoucherOrder> acceptedOrders = new ArrayList<>(orders.size());
             try {
-                stringRedisTemplate.opsForStream().createGroup(QUEUE_NAME, ReadOffset.latest(), "g1");
-            } catch (RedisSystemException e) {
-                // 如果组已存在，忽略该错误
-                if (e.getMessage().contains("BUSYGROUP")) {
-                    log.info("Consumer group 'g1' already exists.");
-                } else {
-                    throw e;  // 其他异常继续抛出
+                for (int i = 0; i < orders.size(); i++) {
+                    Long userId = orders.get(i).getUserId();
+                    if (!locks.containsKey(userId)) {
+                        RLock lock = redissonClient.getLock("lock:order:" + userId);
+                        locks.put(userId, lock.tryLock() ? lock : null);
+                    }
+                    if (locks.get(userId) == null) {
+                        // 获取锁失败，该用户的订单正在被其他线程处理，与逐条下单相同，不再处理
+                        log.error("一人一单！");
+                        continue;
+                    }
+                    accepted[i] = true;
+                    acceptedOrders.add(orders.get(i));
+                }
+                try {
+                    // 2.一个事务完成整批订单
+                    if (!acceptedOrders.isEmpty()) {
+                        proxy.createVoucherOrderBatch(acceptedOrders);
+                    }
+                } catch (Exception e) {
+                    log.warn("批量处理{}条订单失败，改为逐条处理", acceptedOrders.size(), e);
+                    // 3.逐条处理，每条成功后单独确认，失败的记录原因后留在PendingList，不影响同批的其他订单
+                    for (int i = 0; i < batch.size(); i++) {
+                        RecordId id = batch.get(i).getId();
+                        try {
+                            if (accepted[i]) {
+                                // 锁可重入，本线程已持有该用户的锁
+                                handleVoucherOrder(orders.get(i));
+                            }
+                            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, "g1", id);
+                        } catch (Exception ex) {
+                            log.error("处理订单异常，stream:{}, id:{}", QUEUE_NAME, id, ex);
+                            orderStreamRecovery.failed(QUEUE_NAME, id, ex);
+                        }
+                    }
+                    return;
                 }
+            } finally {
+                locks.values().stream().filter(Objects::nonNull).forEach(RLock::unlock);
             }
-            while (true){
+            // 4.整批确认 XACK stream.orders g1 id1 id2 ...
+            RecordId[] ids = batch.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, "g1", ids);
+        }
+
+        // 处理PendingList中消息
+        private void handlePendingList() {
+            while (running){
+                MapRecord<String, Object, Object> record = null;
                 try {
                     // 1.获取PendingList中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 STREAMS streams.order 0
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
+                            Consumer.from("g1", consumerName),
                             StreamReadOptions.empty().count(1),
                             StreamOffset.create(QUEUE_NAME, ReadOffset.from("0"))
                     );
@@ -142,18 +373,23 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         break;
                     }
                     // 3.解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
+                    record = list.get(0);
                     Map<Object, Object> values = record.getValue();
                     VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
                     // 4.创建订单
                     handleVoucherOrder(voucherOrder);
                     // 5.ACK确认 SACK stream.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    stringRedisTemplate.opsForStream().acknowledge(QUEUE_NAME, "g1", record.getId());
                 } catch (Exception e) {
                     log.error("处理PendingList订单异常", e);
 //                    if(e instanceof RedisSystemException){
 //                        stringRedisTemplate.opsForStream().createGroup(QUEUE_NAME, "g1");
 //                    }
+                    if (record != null) {
+                        // 记录失败原因后不再原地重试，空闲超时后由恢复任务认领，超过重试次数转入死信流
+                        orderStreamRecovery.failed(QUEUE_NAME, record.getId(), e);
+                        break;
+                    }
                     try {
                         Thread.sleep(200);
                     } catch (InterruptedException ex) {
@@ -213,26 +449,34 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     // Redis中的Stream实现消息队列
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 已售罄，直接返回，不访问Redis
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
         // 获取用户
         Long userId = UserHolder.getUser().getId();
         // 生成订单id（全局唯一id）
         long orderId = redisIdWorker.nextId("order");
+        // 按用户分区：同一用户的订单总在同一分区，热门优惠券的订单也能分散到所有分区
+        int partition = Math.floorMod(userId.hashCode(), partitions);
         // 1.执行lua脚本
         Long longResult = stringRedisTemplate.execute(
                 SECKILL_SCRIPT,
                 Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
+                voucherId.toString(), userId.toString(), String.valueOf(orderId), String.valueOf(partition)
         );
         // 2.判断结果是否为0
         int result = longResult.intValue();
         // 2.1.结果不为0，无购买资格，返回错误信息
         if(result != 0){
-            return Result.fail(result == 1 ? "库存不足！" : "一人一单！");
+            if (result == 1) {
+                // 登记售罄并广播，之后的请求在各节点本地拒绝
+                soldOutRegistry.markSoldOut(voucherId);
+            }
+            return Result.fail(SECKILL_FAIL_MESSAGES[result]);
         }
-        // 3.获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
 //        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-        // 4.返回订单id
+        // 3.返回订单id
         return Result.ok(orderId);
     }
 
@@ -337,4 +581,47 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 7.保存订单
         save(voucherOrder);
     }
+
+    @Transactional
+    public void createVoucherOrderBatch(List<VoucherOrder> voucherOrders) {
+        // 1.批内去重：同一用户同一优惠券只保留第一条（消息重复投递）
+        Map<String, VoucherOrder> unique = new LinkedHashMap<>(voucherOrders.size());
+        for (VoucherOrder order : voucherOrders) {
+            unique.putIfAbsent(order.getUserId() + ":" + order.getVoucherId(), order);
+        }
+        // 2.一人一单：一次查询找出已经下过单的用户，代替逐条COUNT
+        Set<Long> userIds = unique.values().stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = unique.values().stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        Set<String> existing = new HashSet<>();
+        query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds)
+                .list()
+                .forEach(order -> existing.add(order.getUserId() + ":" + order.getVoucherId()));
+        List<VoucherOrder> orders = new ArrayList<>(unique.size());
+        unique.forEach((key, order) -> {
+            if (existing.contains(key)) {
+                log.error("一人一单！userId:{}, voucherId:{}", order.getUserId(), order.getVoucherId());
+            } else {
+                orders.add(order);
+            }
+        });
+        if (orders.isEmpty()) {
+            return;
+        }
+        // 3.按优惠券聚合，每个优惠券一次扣减：stock = stock - k
+        Map<Long, Long> counts = orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        counts.forEach((voucherId, k) -> {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + k)
+                    .eq("voucher_id", voucherId).ge("stock", k)
+                    .update();
+            if (!success) {
+                // 库存不足以扣减整批，回滚后逐条处理
+                throw new IllegalStateException("库存不足！voucherId:" + voucherId + ", count:" + k);
+            }
+        });
+        // 4.多行INSERT保存订单
+        baseMapper.insertBatch(orders);
+    }
 }
@@ -1,81 +1,442 @@
 package com.hmdp.utils;
 
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.google.common.cache.CacheStats;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
+import static com.hmdp.utils.CacheMetrics.*;
 import static com.hmdp.utils.RedisConstants.*;
 
 @Component
 @Slf4j
 public class CacheClient {
 
+    // 哈希结构逻辑过期的字段
+    private static final byte[] FIELD_DATA = "data".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_EXPIRE = "expire".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_DELTA = "delta".getBytes(StandardCharsets.UTF_8);
+
+    // 读取哈希结构的数据，过期时顺便抢重建锁，返回 {data, flag}
+    private static final DefaultRedisScript<List> LOGICAL_EXPIRE_SCRIPT;
+    static {
+        LOGICAL_EXPIRE_SCRIPT = new DefaultRedisScript<>();
+        LOGICAL_EXPIRE_SCRIPT.setLocation(new ClassPathResource("logical_expire.lua"));
+        LOGICAL_EXPIRE_SCRIPT.setResultType(List.class);
+    }
+    private static final long FLAG_EXPIRED_LOCKED = 1L;
+
     private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final LocalCache localCache;
+    private final HotKeyDetector hotKeyDetector;
+    private final CacheMetrics metrics;
+    private final NegativeCache negativeCache;
+    private final RebuildScheduler rebuildScheduler;
+    private final List<CacheCodec> codecs;
+
+    // 写入时使用的编解码器，读取时按数据格式自动识别
+    @Value("${hmdp.cache.codec:" + JsonCacheCodec.NAME + "}")
+    private String codecName;
+    private CacheCodec writeCodec;
+
+    // 单飞加载：同一个key在本节点同一时刻只有一个加载任务，其余线程共享结果
+    private final Map<String, CompletableFuture<Object>> inflightLoads = new ConcurrentHashMap<>();
+    // 等待其他节点重建完成的通知
+    private final Map<String, CompletableFuture<Void>> remoteLoads = new ConcurrentHashMap<>();
+    // 等待通知期间重新检查缓存和锁的间隔：正常情况由通知唤醒，这里只是Pub/Sub丢失通知时的兜底，
+    // 间隔取得较长，避免等待线程频繁访问Redis
+    private static final long REMOTE_LOAD_POLL_MILLIS = 1000;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer, LocalCache localCache,
+                       HotKeyDetector hotKeyDetector, CacheMetrics metrics, NegativeCache negativeCache,
+                       RebuildScheduler rebuildScheduler, List<CacheCodec> codecs) {
 
         this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.localCache = localCache;
+        this.hotKeyDetector = hotKeyDetector;
+        this.metrics = metrics;
+        this.negativeCache = negativeCache;
+        this.rebuildScheduler = rebuildScheduler;
+        this.codecs = codecs;
+    }
+
+    // 订阅失效广播，其他节点修改数据后删除本地L1
+    @PostConstruct
+    public void init(){
+        writeCodec = codecs.stream().filter(codec -> codec.name().equals(codecName)).findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的缓存编解码器：" + codecName));
+        listenerContainer.addMessageListener((message, pattern) -> {
+            // 批量失效时一条消息包含多个key，以换行分隔
+            for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+                localCache.invalidate(key);
+                hotKeyDetector.invalidate(key);
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅重建完成通知，唤醒等待其他节点重建的线程
+        listenerContainer.addMessageListener((message, pattern) -> {
+            CompletableFuture<Void> waiter = remoteLoads.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (waiter != null) {
+                waiter.complete(null);
+            }
+        }, new ChannelTopic(CACHE_LOADED_CHANNEL));
+    }
+
+    // 删除缓存，并广播给所有节点删除L1
+    public void delete(String key){
+        stringRedisTemplate.delete(key);
+        localCache.invalidate(key);
+        hotKeyDetector.invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    // 批量删除缓存：一次DEL，一条广播消息
+    public void deleteBatch(Collection<String> keys){
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.delete(keys);
+        keys.forEach(key -> {
+            localCache.invalidate(key);
+            hotKeyDetector.invalidate(key);
+        });
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, String.join("\n", keys));
+    }
+
+    // 各级缓存的命中统计
+    public Map<String, Object> stats(){
+        CacheStats local = localCache.stats();
+        Map<String, Object> l1 = new LinkedHashMap<>();
+        l1.put("size", localCache.size());
+        l1.put("hits", local.hitCount());
+        l1.put("misses", local.missCount());
+        l1.put("evictions", local.evictionCount());
+        l1.put("hitRate", local.hitRate());
+        Map<String, Object> l2 = new LinkedHashMap<>();
+        long hits = metrics.count(LEVEL_REDIS, "hit") + metrics.count(LEVEL_REDIS, "null_hit");
+        long misses = metrics.count(LEVEL_REDIS, "miss");
+        l2.put("hits", hits);
+        l2.put("misses", misses);
+        l2.put("hitRate", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("local", l1);
+        stats.put("redis", l2);
+        return stats;
     }
 
     // 存入Redis，并设置过期时间
     public void set(String key, Object value, Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        setRaw(key, writeCodec.encode(value), Expiration.from(time, unit));
+    }
+
+    // 批量存入Redis，一个pipeline完成；过期时间随机增加最多10%，避免同一批key同时过期
+    public void setBatch(Map<String, ?> values, Long time, TimeUnit unit){
+        long seconds = unit.toSeconds(time);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                long jitter = ThreadLocalRandom.current().nextLong(seconds / 10 + 1);
+                connection.stringCommands().set(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                        writeCodec.encode(entry.getValue()), Expiration.seconds(seconds + jitter),
+                        RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    // 存入Redis，不过期
+    public void set(String key, Object value){
+        setRaw(key, writeCodec.encode(value), Expiration.persistent());
     }
 
     // 存入Redis，并设置逻辑过期时间
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit){
-        // 设置逻辑过期时间
-        RedisData redisData = new RedisData(LocalDateTime.now().plusSeconds(unit.toSeconds(time)), value);
-        // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicalExpire(key, value, time, unit, null);
+    }
+
+    // 存入Redis，设置逻辑过期时间，并记录本次重建耗时（毫秒）
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, Long delta){
+        // 设置逻辑过期时间，写入Redis
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        setRaw(key, writeCodec.encodeWithExpire(new RedisData(expireTime, value, delta)), Expiration.persistent());
+    }
+
+    // 以哈希结构存入Redis：data为编码后的数据，expire为逻辑过期时间戳（毫秒），不解析data即可读到过期时间
+    public void setWithLogicalExpireHash(String key, Object value, Long time, TimeUnit unit, Long delta){
+        Map<byte[], byte[]> fields = new HashMap<>(4);
+        fields.put(FIELD_DATA, writeCodec.encode(value));
+        fields.put(FIELD_EXPIRE, String.valueOf(System.currentTimeMillis() + unit.toMillis(time)).getBytes(StandardCharsets.UTF_8));
+        if (delta != null) {
+            fields.put(FIELD_DELTA, String.valueOf(delta).getBytes(StandardCharsets.UTF_8));
+        }
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hMSet(key.getBytes(StandardCharsets.UTF_8), fields);
+            return null;
+        });
+    }
+
+    // 读取哈希结构的逻辑过期时间戳（毫秒），不存在返回null
+    public Long getLogicalExpire(String key){
+        Object expire = stringRedisTemplate.opsForHash().get(key, "expire");
+        return expire == null ? null : Long.valueOf(expire.toString());
+    }
+
+    // 查询列表类型的缓存
+    public <R> List<R> getList(String key, Class<R> type){
+        byte[] raw = getRaw(key);
+        return isPresent(raw) ? codecFor(raw).decodeList(raw, type) : null;
+    }
+
+    // 查本地：配置了L1的前缀查L1，其他前缀只有热点key才有本地副本
+    private <R> R getLocal(String keyPrefix, String cacheKey, String strategy){
+        boolean hot = hotKeyDetector.record(cacheKey);
+        R r = null;
+        if (localCache.accept(keyPrefix)) {
+            r = localCache.get(cacheKey);
+        }
+        if (r == null && hot) {
+            r = hotKeyDetector.getReplica(cacheKey);
+        }
+        if (r != null) {
+            metrics.hit(keyPrefix, strategy, LEVEL_LOCAL);
+        }
+        return copyOf(r);
+    }
+
+    private void putLocal(String keyPrefix, String cacheKey, Object value){
+        if (localCache.accept(keyPrefix)) {
+            localCache.put(cacheKey, copyOf(value));
+        } else if (hotKeyDetector.isHot(cacheKey)) {
+            // 热点key自动提升为本地副本
+            hotKeyDetector.putReplica(cacheKey, copyOf(value));
+        }
+    }
+
+    /**
+     * 本地缓存的对象在线程之间共享，存入和取出时各复制一份，调用方修改返回的对象（如填充距离）不会影响本地缓存；
+     * 浅拷贝，缓存的实体字段都是不可变类型，String、包装类型等非bean直接返回
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> R copyOf(R value){
+        if (value == null || !BeanUtil.isBean(value.getClass())) {
+            return value;
+        }
+        return (R) BeanUtil.copyProperties(value, value.getClass());
+    }
+
+    private byte[] getRaw(String key){
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void setRaw(String key, byte[] value, Expiration expiration){
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(key.getBytes(StandardCharsets.UTF_8), value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    // 非空即命中，空字节表示缓存的空值
+    private static boolean isPresent(byte[] raw){
+        return raw != null && raw.length > 0;
+    }
+
+    private CacheCodec codecFor(byte[] raw){
+        for (CacheCodec codec : codecs) {
+            if (codec.supports(raw)) {
+                return codec;
+            }
+        }
+        throw new IllegalStateException("无法识别的缓存数据格式");
+    }
+
+    private <R> R decode(byte[] raw, Class<R> type){
+        return codecFor(raw).decode(raw, type);
     }
 
     // 缓存空值，解决缓存穿透
     public <R, ID> R querySolvingPassThroughByNull(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
         String cacheKey = keyPrefix + id;
+        // 0.先查本地（L1或热点副本），同时记录访问频率
+        R local = getLocal(keyPrefix, cacheKey, STRATEGY_NULL);
+        if (local != null) {
+            return local;
+        }
         // 1.从Redis中查询id
-        String json = stringRedisTemplate.opsForValue().get(cacheKey);
+        byte[] raw = getRaw(cacheKey);
 
-        if (StrUtil.isNotBlank(json)) {
+        if (isPresent(raw)) {
+            metrics.hit(keyPrefix, STRATEGY_NULL, LEVEL_REDIS);
             // 2.命中返回商铺信息
-            return JSONUtil.toBean(json, type);
-        }else if(json != null){
+            R r = decode(raw, type);
+            putLocal(keyPrefix, cacheKey, r);
+            return r;
+        }else if(raw != null){
+            metrics.nullHit(keyPrefix, STRATEGY_NULL);
             // 2.1.缓存为空直接返回空
             return null;
         }
+        // 2.2.整数id查空值位图，已标记为不存在直接返回空
+        boolean numeric = NegativeCache.supports(id);
+        if (numeric && negativeCache.contains(keyPrefix, ((Number) id).longValue())) {
+            metrics.nullHit(keyPrefix, STRATEGY_NULL);
+            return null;
+        }
+        metrics.miss(keyPrefix, STRATEGY_NULL);
         // 3.未命中查询数据库
+        long begin = System.nanoTime();
         R r = dbFallback.apply(id);
+        metrics.rebuild(keyPrefix, STRATEGY_NULL, System.nanoTime() - begin);
         // 4.商铺不在数据库
         if(r == null){
-            // 4.1.缓存空值
-            stringRedisTemplate.opsForValue().set(cacheKey, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            // 4.1.缓存空值：整数id记入位图，每个id一位；其他id仍写空字符串key
+            if (numeric) {
+                negativeCache.add(keyPrefix, ((Number) id).longValue());
+            } else {
+                setRaw(cacheKey, new byte[0], Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES));
+            }
             // 4.2.返回错误信息
             return null;
         }
         // 5.商铺在数据库
         // 5.1.保存到Redis中
         this.set(cacheKey, r, time, unit);
+        putLocal(keyPrefix, cacheKey, r);
         // 5.2.返回商铺信息
         return r;
     }
 
+    // 批量查询：一次MGET，未命中的id一次IN查询，再用一个pipeline回填，按调用方的id顺序返回
+    public <R, ID> List<R> queryBatch(
+            String keyPrefix, List<ID> ids, Class<R> type, Function<List<ID>, Map<ID, R>> dbBatchFallback,
+            Long time, TimeUnit unit){
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.MGET批量查询Redis
+        byte[][] keys = new byte[ids.size()][];
+        for (int i = 0; i < ids.size(); i++) {
+            keys[i] = (keyPrefix + ids.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> raws = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys));
+        // 2.解析命中的数据，收集未命中的id
+        Map<ID, R> found = new LinkedHashMap<>(ids.size());
+        List<ID> missIds = new ArrayList<>();
+        int nullHits = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] raw = raws == null ? null : raws.get(i);
+            if (isPresent(raw)) {
+                found.put(ids.get(i), decode(raw, type));
+            } else if (raw != null) {
+                // 2.1.缓存的空值，数据库中不存在
+                nullHits++;
+            } else {
+                missIds.add(ids.get(i));
+            }
+        }
+        // 2.2.整数id查空值位图，排除已知不存在的id
+        List<Long> numericIds = toNumericIds(missIds);
+        if (numericIds != null && !numericIds.isEmpty()) {
+            Set<Long> absent = negativeCache.containsAll(keyPrefix, numericIds);
+            if (!absent.isEmpty()) {
+                missIds.removeIf(id -> absent.contains(((Number) id).longValue()));
+                nullHits += absent.size();
+            }
+        }
+        metrics.hit(keyPrefix, STRATEGY_BATCH, LEVEL_REDIS, found.size());
+        metrics.nullHit(keyPrefix, STRATEGY_BATCH, nullHits);
+        metrics.miss(keyPrefix, STRATEGY_BATCH, missIds.size());
+        // 3.未命中的id一次性查询数据库，并用pipeline回填
+        if (!missIds.isEmpty()) {
+            long begin = System.nanoTime();
+            Map<ID, R> loaded = dbBatchFallback.apply(missIds);
+            metrics.rebuild(keyPrefix, STRATEGY_BATCH, System.nanoTime() - begin);
+            found.putAll(loaded);
+            Expiration ttl = Expiration.from(time, unit);
+            Expiration nullTtl = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+            List<Long> absentIds = new ArrayList<>();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (ID id : missIds) {
+                    R r = loaded.get(id);
+                    byte[] key = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                    if (r == null && numericIds != null) {
+                        // 数据库中不存在，整数id记入空值位图
+                        absentIds.add(((Number) id).longValue());
+                    } else if (r == null) {
+                        // 数据库中不存在，缓存空值，解决缓存穿透
+                        connection.stringCommands().set(key, new byte[0], nullTtl, RedisStringCommands.SetOption.upsert());
+                    } else {
+                        byte[] value = writeCodec.encode(r);
+                        connection.stringCommands().set(key, value, ttl, RedisStringCommands.SetOption.upsert());
+                    }
+                }
+                return null;
+            });
+            negativeCache.addAll(keyPrefix, absentIds);
+        }
+        // 4.按调用方的顺序返回
+        List<R> result = new ArrayList<>(found.size());
+        for (ID id : ids) {
+            R r = found.get(id);
+            if (r != null) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    // 全部是整数id时转换为long，否则返回null（不使用空值位图）
+    private static <ID> List<Long> toNumericIds(List<ID> ids){
+        List<Long> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            if (!NegativeCache.supports(id)) {
+                return null;
+            }
+            result.add(((Number) id).longValue());
+        }
+        return result;
+    }
+
     // 逻辑过期，解决缓存击穿
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
-    private Boolean tryLock(String key, Long time, TimeUnit unit){
+    private Boolean tryLock(String key, Long time, TimeUnit unit, String keyPrefix, String strategy){
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", time, unit);
-        return BooleanUtil.isTrue(flag);
+        boolean isLock = BooleanUtil.isTrue(flag);
+        metrics.lock(keyPrefix, strategy, isLock);
+        return isLock;
     }
     private void unlock(String key){
         stringRedisTemplate.delete(key);
@@ -84,75 +445,170 @@ public class CacheClient {
             String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
             Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit){
         String cacheKey = keyPrefix + id;
+        hotKeyDetector.record(cacheKey);
         // 1.查询Redis
-        String redisDataJson = stringRedisTemplate.opsForValue().get(cacheKey);
+        byte[] raw = getRaw(cacheKey);
         // 2.未命中返回空
-        if (StrUtil.isBlank(redisDataJson)) {
+        if (!isPresent(raw)) {
+            metrics.miss(keyPrefix, STRATEGY_LOGICAL);
             return null;
         }
-        // 3.命中，判断缓存是否过期
-        RedisData redisData = JSONUtil.toBean(redisDataJson, RedisData.class);
-        // redisData中的data是JSONObject而不是Object
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        metrics.hit(keyPrefix, STRATEGY_LOGICAL, LEVEL_REDIS);
+        // 3.命中，判断缓存是否过期（编解码器一次解析出过期时间和目标类型的数据）
+        RedisData redisData = codecFor(raw).decodeWithExpire(raw, type);
+        R r = type.cast(redisData.getData());
         // 4.未过期，返回商铺信息
         if(LocalDateTime.now().isAfter(redisData.getExpireTime())) {
             // 5.过期，尝试获取互斥锁
             String lockKey = lockPrefix + id;
-            Boolean isLock = tryLock(lockKey, lockTime, lockUnit);
+            Boolean isLock = tryLock(lockKey, lockTime, lockUnit, keyPrefix, STRATEGY_LOGICAL);
             // 5.1.获取锁失败，跳过
             if (isLock) {
                 // 5.2.获取锁成功，开启独立线程
-                CACHE_REBUILD_EXECUTOR.submit(() -> {
-                    // 5.2.1.缓存重建
-                    try {
-                        // 查询数据库
-                        R r1 = dbFallback.apply(id);
-                        // 写入Redis
-                        this.setWithLogicalExpire(cacheKey, r1, cacheTime, cacheUnit);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    } finally {
-                        // 5.2.2.释放锁
-                        unlock(lockKey);
-                    }
-                });
+                rebuildAsync(keyPrefix, STRATEGY_LOGICAL, cacheKey, lockKey, id, dbFallback, cacheTime, cacheUnit);
             }
         }
         return r;
     }
 
+    // 逻辑过期（哈希结构），解决缓存击穿：一次Lua调用返回数据和“已过期/抢到锁”标记，
+    // 不需要解析整个信封来判断过期，过期时也不需要单独的tryLock往返
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithLogicalExpireHash(
+            String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+            Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit){
+        String cacheKey = keyPrefix + id;
+        String lockKey = lockPrefix + id;
+        hotKeyDetector.record(cacheKey);
+        // 1.执行Lua脚本，结果按字节返回
+        List<?> result = stringRedisTemplate.execute(LOGICAL_EXPIRE_SCRIPT,
+                RedisSerializer.string(), (RedisSerializer) RedisSerializer.byteArray(),
+                Arrays.asList(cacheKey, lockKey),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(lockUnit.toMillis(lockTime)));
+        // 2.未命中返回空
+        if (result == null || result.isEmpty()) {
+            metrics.miss(keyPrefix, STRATEGY_LOGICAL_HASH);
+            return null;
+        }
+        metrics.hit(keyPrefix, STRATEGY_LOGICAL_HASH, LEVEL_REDIS);
+        // 3.只解析一次数据
+        byte[] raw = (byte[]) result.get(0);
+        long flag = (Long) result.get(1);
+        if (flag != 0L) {
+            metrics.lock(keyPrefix, STRATEGY_LOGICAL_HASH, flag == FLAG_EXPIRED_LOCKED);
+        }
+        // 4.已过期且抢到锁，开启独立线程重建
+        if (flag == FLAG_EXPIRED_LOCKED) {
+            rebuildAsync(keyPrefix, STRATEGY_LOGICAL_HASH, cacheKey, lockKey, id, dbFallback, cacheTime, cacheUnit);
+        }
+        return decode(raw, type);
+    }
+
+    // 提前刷新（XFetch），解决缓存击穿：每次读取按概率决定是否在过期前重建，
+    // 重建越慢（delta越大）、beta越大，越早刷新，各节点的重建在时间上被打散
+    public <R, ID> R queryWithEarlyRefresh(
+            String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+            Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit, double beta){
+        String cacheKey = keyPrefix + id;
+        hotKeyDetector.record(cacheKey);
+        // 1.查询Redis
+        byte[] raw = getRaw(cacheKey);
+        // 2.未命中返回空（与逻辑过期相同，需要提前预热）
+        if (!isPresent(raw)) {
+            metrics.miss(keyPrefix, STRATEGY_EARLY);
+            return null;
+        }
+        metrics.hit(keyPrefix, STRATEGY_EARLY, LEVEL_REDIS);
+        // 3.命中，解析过期时间和上次重建耗时
+        RedisData redisData = codecFor(raw).decodeWithExpire(raw, type);
+        R r = type.cast(redisData.getData());
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        // 4.XFetch：now - delta * beta * ln(rand) >= expire 时提前刷新，rand∈(0,1]
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble();
+        double now = System.currentTimeMillis() - delta * beta * Math.log(rand);
+        if (now >= expireAt) {
+            // 5.尝试获取互斥锁，只有一个线程重建，其余继续返回旧数据
+            String lockKey = lockPrefix + id;
+            if (tryLock(lockKey, lockTime, lockUnit, keyPrefix, STRATEGY_EARLY)) {
+                rebuildAsync(keyPrefix, STRATEGY_EARLY, cacheKey, lockKey, id, dbFallback, cacheTime, cacheUnit);
+            }
+        }
+        return r;
+    }
+
+    // 异步重建逻辑过期数据，记录重建耗时，完成或被拒绝后释放锁
+    private <R, ID> void rebuildAsync(String keyPrefix, String strategy,
+            String cacheKey, String lockKey, ID id, Function<ID, R> dbFallback, Long cacheTime, TimeUnit cacheUnit){
+        // 交给共享的重建调度器，同一个key只排队一次；被拒绝时释放锁，继续返回旧数据
+        rebuildScheduler.submit(cacheKey, () -> {
+            // 5.2.1.缓存重建
+            try {
+                long begin = System.nanoTime();
+                // 查询数据库
+                R r1 = dbFallback.apply(id);
+                long nanos = System.nanoTime() - begin;
+                metrics.rebuild(keyPrefix, strategy, nanos);
+                // 写入Redis，保持原来的存储结构
+                if (STRATEGY_LOGICAL_HASH.equals(strategy)) {
+                    this.setWithLogicalExpireHash(cacheKey, r1, cacheTime, cacheUnit, TimeUnit.NANOSECONDS.toMillis(nanos));
+                } else {
+                    this.setWithLogicalExpire(cacheKey, r1, cacheTime, cacheUnit, TimeUnit.NANOSECONDS.toMillis(nanos));
+                }
+            } finally {
+                // 5.2.2.释放锁
+                unlock(lockKey);
+            }
+        }, () -> unlock(lockKey));
+    }
+
     // 互斥锁，解决缓存击穿
     public <R, ID> R queryWithMutex(
             String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
             Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit){
-        // 2.可能存在，从Redis中查询id
         String cacheKey = keyPrefix + id;
-        String json = stringRedisTemplate.opsForValue().get(cacheKey);
-        if (StrUtil.isNotBlank(json)) {
+        // 1.先查本地（L1或热点副本），命中直接返回已反序列化的对象
+        R local = getLocal(keyPrefix, cacheKey, STRATEGY_MUTEX);
+        if (local != null) {
+            return local;
+        }
+        // 2.可能存在，从Redis中查询id
+        byte[] raw = getRaw(cacheKey);
+        if (isPresent(raw)) {
+            metrics.hit(keyPrefix, STRATEGY_MUTEX, LEVEL_REDIS);
             // 2.1命中返回商铺信息
-            return JSONUtil.toBean(json, type);
+            R r = decode(raw, type);
+            putLocal(keyPrefix, cacheKey, r);
+            return r;
         }
-        R r = null;
+        metrics.miss(keyPrefix, STRATEGY_MUTEX);
         String lockKey = lockPrefix + id;
-        Boolean isLock = tryLock(lockKey, lockTime, lockUnit);
         try {
-            // 3.未命中，尝试获取锁
-            if (!isLock) {
-                // 3.1.未获取到锁，休眠递归
+            // 3.未命中，尝试获取锁（每次失败都会计入 cache.lock{result=failed}，即进入休眠的次数）
+            while (!tryLock(lockKey, lockTime, lockUnit, keyPrefix, STRATEGY_MUTEX)) {
+                // 3.1.未获取到锁，休眠后重新查询（循环代替递归，避免栈溢出）
                 Thread.sleep(50);
-                return queryWithMutex(keyPrefix, lockPrefix, id, type, dbFallback, cacheTime, cacheUnit, lockTime, lockUnit);
+                raw = getRaw(cacheKey);
+                if (isPresent(raw)) {
+                    return decode(raw, type);
+                }
             }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        R r;
+        try {
             // 3.2.1.获取到锁，根据id查数据库
+            long begin = System.nanoTime();
             r = dbFallback.apply(id);
-            Thread.sleep(200);
+            metrics.rebuild(keyPrefix, STRATEGY_MUTEX, System.nanoTime() - begin);
             // 3.2.2.商铺不在数据库，返回错误信息
             if(r == null){
                 return null;
             }
             // 3.2.3.商铺在数据库，写入Redis
             this.set(cacheKey, r, cacheTime, cacheUnit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            putLocal(keyPrefix, cacheKey, r);
         } finally {
             // 4.释放互斥锁
             unlock(lockKey);
@@ -160,4 +616,132 @@ public class CacheClient {
         // 5.返回数据
         return r;
     }
+
+    // 单飞加载，解决缓存击穿：本节点并发请求共享一个CompletableFuture，集群内只有拿到锁的节点查库，
+    // 其他节点等待Pub/Sub通知唤醒，通知丢失时按较长的间隔轮询兜底；数据库中不存在的整数id记入空值位图
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithSingleFlight(
+            String keyPrefix, String lockPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+            Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit){
+        String cacheKey = keyPrefix + id;
+        // 1.先查本地（L1或热点副本），同时记录访问频率
+        R local = getLocal(keyPrefix, cacheKey, STRATEGY_SINGLE_FLIGHT);
+        if (local != null) {
+            return local;
+        }
+        // 2.查Redis
+        byte[] raw = getRaw(cacheKey);
+        if (isPresent(raw)) {
+            metrics.hit(keyPrefix, STRATEGY_SINGLE_FLIGHT, LEVEL_REDIS);
+            R r = decode(raw, type);
+            putLocal(keyPrefix, cacheKey, r);
+            return r;
+        }
+        // 2.1.整数id查空值位图，已标记为不存在直接返回空
+        if (NegativeCache.supports(id) && negativeCache.contains(keyPrefix, ((Number) id).longValue())) {
+            metrics.nullHit(keyPrefix, STRATEGY_SINGLE_FLIGHT);
+            return null;
+        }
+        metrics.miss(keyPrefix, STRATEGY_SINGLE_FLIGHT);
+        // 3.未命中，本节点已有加载任务则等待它的结果
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inflightLoads.putIfAbsent(cacheKey, created);
+        if (existing != null) {
+            // 加载者最长要等待锁的有效期再查库，等待时间必须比它长
+            try {
+                return (R) await(existing, lockTime * 2, lockUnit);
+            } catch (TimeoutException e) {
+                // 加载者仍未返回，自己读缓存或查库兜底，不向调用方抛出
+                log.warn("等待本节点的缓存加载超时, key: {}", cacheKey);
+                raw = getRaw(cacheKey);
+                return isPresent(raw) ? decode(raw, type) : dbFallback.apply(id);
+            }
+        }
+        // 4.本节点的加载者
+        try {
+            R r = loadOnce(keyPrefix, cacheKey, lockPrefix + id, id, type, dbFallback, cacheTime, cacheUnit, lockTime, lockUnit);
+            putLocal(keyPrefix, cacheKey, r);
+            created.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflightLoads.remove(cacheKey, created);
+        }
+    }
+
+    private <R, ID> R loadOnce(String keyPrefix,
+            String cacheKey, String lockKey, ID id, Class<R> type, Function<ID, R> dbFallback,
+            Long cacheTime, TimeUnit cacheUnit, Long lockTime, TimeUnit lockUnit){
+        // 1.获取到锁，由本节点查库重建
+        if (tryLock(lockKey, lockTime, lockUnit, keyPrefix, STRATEGY_SINGLE_FLIGHT)) {
+            try {
+                long begin = System.nanoTime();
+                R r = dbFallback.apply(id);
+                metrics.rebuild(keyPrefix, STRATEGY_SINGLE_FLIGHT, System.nanoTime() - begin);
+                if (r != null) {
+                    this.set(cacheKey, r, cacheTime, cacheUnit);
+                } else if (NegativeCache.supports(id)) {
+                    // 数据库中不存在，记入空值位图，后续请求不再查库
+                    negativeCache.add(keyPrefix, ((Number) id).longValue());
+                }
+                return r;
+            } finally {
+                unlock(lockKey);
+                // 通知其他节点重建已完成
+                stringRedisTemplate.convertAndSend(CACHE_LOADED_CHANNEL, cacheKey);
+            }
+        }
+        // 2.其他节点正在重建，先注册等待，再检查一次缓存，避免错过通知
+        CompletableFuture<Void> waiter = remoteLoads.computeIfAbsent(cacheKey, k -> new CompletableFuture<>());
+        byte[] raw = getRaw(cacheKey);
+        if (isPresent(raw)) {
+            remoteLoads.remove(cacheKey, waiter);
+            return decode(raw, type);
+        }
+        long deadline = System.nanoTime() + lockUnit.toNanos(lockTime);
+        long poll = Math.max(1, Math.min(REMOTE_LOAD_POLL_MILLIS, lockUnit.toMillis(lockTime)));
+        try {
+            while (true) {
+                try {
+                    // 3.等待通知，通知丢失时每隔poll毫秒醒来检查一次
+                    waiter.get(poll, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    // 3.1.通知可能丢失，重新检查缓存
+                    raw = getRaw(cacheKey);
+                    if (isPresent(raw)) {
+                        return decode(raw, type);
+                    }
+                    // 3.2.锁已释放但没有缓存（通知丢失且数据不存在，或重建节点宕机后锁过期），或等待超时，本节点查库兜底
+                    if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(lockKey)) || System.nanoTime() >= deadline) {
+                        log.warn("等待缓存重建未收到通知, key: {}", cacheKey);
+                        return dbFallback.apply(id);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            remoteLoads.remove(cacheKey, waiter);
+        }
+        // 4.被唤醒后读取重建结果，仍为空说明数据库中不存在
+        raw = getRaw(cacheKey);
+        return isPresent(raw) ? decode(raw, type) : null;
+    }
+
+    private Object await(CompletableFuture<Object> future, Long time, TimeUnit unit) throws TimeoutException {
+        try {
+            return future.get(time, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
 }
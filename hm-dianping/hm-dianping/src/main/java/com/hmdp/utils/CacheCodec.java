@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import java.util.List;
+
+/**
+ * 缓存值编解码器，CacheClient读写Redis时使用
+ * 读取时根据首字节选择编解码器，不同格式可以在滚动发布期间共存
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置 hmdp.cache.codec
+     * @return
+     */
+    String name();
+
+    /**
+     * 判断数据是否为本编解码器写入的格式
+     * @param bytes 非空的缓存值
+     * @return
+     */
+    boolean supports(byte[] bytes);
+
+    byte[] encode(Object value);
+
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    <R> List<R> decodeList(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码逻辑过期数据
+     * @param redisData 逻辑过期时间、数据和重建耗时
+     * @return
+     */
+    byte[] encodeWithExpire(RedisData redisData);
+
+    /**
+     * 解码逻辑过期数据，返回的RedisData中data已经是目标类型
+     * @param bytes
+     * @param type
+     * @return
+     */
+    RedisData decodeWithExpire(byte[] bytes, Class<?> type);
+}
@@ -0,0 +1,155 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 缓存指标，统一打上 prefix（key前缀）和 strategy（查询策略）标签，通过Actuator暴露给Prometheus
+ */
+@Component
+public class CacheMetrics {
+
+    public static final String STRATEGY_NULL = "null";
+    public static final String STRATEGY_BATCH = "batch";
+    public static final String STRATEGY_LOGICAL = "logical";
+    public static final String STRATEGY_LOGICAL_HASH = "logical_hash";
+    public static final String STRATEGY_EARLY = "early";
+    public static final String STRATEGY_MUTEX = "mutex";
+    public static final String STRATEGY_SINGLE_FLIGHT = "singleflight";
+
+    public static final String LEVEL_LOCAL = "local";
+    public static final String LEVEL_REDIS = "redis";
+
+    public static final String REQUESTS = "cache.requests";
+    public static final String LOCK = "cache.lock";
+    public static final String REBUILD = "cache.rebuild";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 按标签组合缓存已注册的计量器，热路径上只做一次map查找，不再每次构建builder并查询registry
+     * key为标签值列表，request为 (prefix, strategy, level, result)
+     */
+    private final Map<List<String>, Counter> requests = new ConcurrentHashMap<>();
+    private final Map<List<String>, Counter> locks = new ConcurrentHashMap<>();
+    private final Map<List<String>, Timer> rebuilds = new ConcurrentHashMap<>();
+    private final Map<String, Counter> dropped = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void hit(String prefix, String strategy, String level){
+        request(prefix, strategy, level, "hit").increment();
+    }
+
+    // 命中缓存的空值
+    public void nullHit(String prefix, String strategy){
+        request(prefix, strategy, LEVEL_REDIS, "null_hit").increment();
+    }
+
+    public void miss(String prefix, String strategy){
+        request(prefix, strategy, LEVEL_REDIS, "miss").increment();
+    }
+
+    public void miss(String prefix, String strategy, int count){
+        request(prefix, strategy, LEVEL_REDIS, "miss").increment(count);
+    }
+
+    public void hit(String prefix, String strategy, String level, int count){
+        request(prefix, strategy, level, "hit").increment(count);
+    }
+
+    public void nullHit(String prefix, String strategy, int count){
+        request(prefix, strategy, LEVEL_REDIS, "null_hit").increment(count);
+    }
+
+    /**
+     * 记录一次抢锁结果
+     * @param acquired 是否抢到锁
+     */
+    public void lock(String prefix, String strategy, boolean acquired){
+        String result = acquired ? "acquired" : "failed";
+        meter(locks, Arrays.asList(prefix, strategy, result), k -> Counter.builder(LOCK)
+                .description("缓存重建互斥锁的获取结果")
+                .tag("prefix", prefix)
+                .tag("strategy", strategy)
+                .tag("result", result)
+                .register(registry))
+                .increment();
+    }
+
+    // 记录一次查库重建的耗时
+    public void rebuild(String prefix, String strategy, long nanos){
+        meter(rebuilds, Arrays.asList(prefix, strategy), k -> Timer.builder(REBUILD)
+                .description("缓存重建（查库并写入Redis）的耗时")
+                .tag("prefix", prefix)
+                .tag("strategy", strategy)
+                .publishPercentileHistogram()
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // 重建任务被拒绝（队列已满）或超时
+    public void rebuildDropped(String reason){
+        meter(dropped, reason, k -> Counter.builder(REBUILD + ".dropped")
+                .description("未完成的缓存重建任务数")
+                .tag("reason", reason)
+                .register(registry))
+                .increment();
+    }
+
+    // 重建线程池的排队数和活跃线程数
+    public void monitor(String name, ThreadPoolExecutor executor){
+        Gauge.builder(REBUILD + ".queue", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .tag("executor", name)
+                .register(registry);
+        Gauge.builder(REBUILD + ".active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数")
+                .tag("executor", name)
+                .register(registry);
+    }
+
+    /**
+     * 汇总某一级缓存某种结果的次数，供 /admin/cache/stats 使用
+     */
+    public long count(String level, String result){
+        // 只遍历本类注册的请求计数器，不按名称和标签搜索整个registry
+        double sum = 0;
+        for (Map.Entry<List<String>, Counter> entry : requests.entrySet()) {
+            List<String> tags = entry.getKey();
+            if (tags.get(2).equals(level) && tags.get(3).equals(result)) {
+                sum += entry.getValue().count();
+            }
+        }
+        return (long) sum;
+    }
+
+    private Counter request(String prefix, String strategy, String level, String result){
+        return meter(requests, Arrays.asList(prefix, strategy, level, result), k -> Counter.builder(REQUESTS)
+                .description("缓存查询次数")
+                .tag("prefix", prefix)
+                .tag("strategy", strategy)
+                .tag("level", level)
+                .tag("result", result)
+                .register(registry));
+    }
+
+    // 先get再computeIfAbsent：JDK8的computeIfAbsent即使key已存在也会对桶加锁
+    private static <K, M> M meter(Map<K, M> cache, K key, Function<K, M> register){
+        M meter = cache.get(key);
+        return meter != null ? meter : cache.computeIfAbsent(key, register);
+    }
+}
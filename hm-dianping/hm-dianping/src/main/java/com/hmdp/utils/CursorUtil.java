@@ -0,0 +1,84 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 不透明分页游标：把排序键拼接后做URL安全的Base64编码，客户端只需原样传回
+ */
+public class CursorUtil {
+
+    private static final String SEPARATOR = ":";
+
+    public static String encode(Object... parts){
+        return Base64.encodeUrlSafe(StrUtil.join(SEPARATOR, parts));
+    }
+
+    /**
+     * 解析游标
+     * @param cursor
+     * @return 字段数组，游标为空或格式错误时返回null，字段个数由调用方校验
+     */
+    public static String[] decode(String cursor){
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            return Base64.decodeStr(cursor).split(SEPARATOR, -1);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析并校验游标，format描述每个字段，用":"分隔：L为long，I为int，D为有限的小数，其余为必须相同的字面量；
+     * 可以传多个format（如兼容旧版本的游标），字段个数和格式与其中之一相同即有效
+     * @param cursor
+     * @param formats
+     * @return 字段数组，游标为空或无效时返回null，调用方按游标是否为空区分
+     */
+    public static String[] parse(String cursor, String... formats){
+        String[] parts = decode(cursor);
+        if (parts == null) {
+            return null;
+        }
+        for (String format : formats) {
+            if (matches(parts, format.split(SEPARATOR))) {
+                return parts;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String[] parts, String[] format) {
+        if (parts.length != format.length) {
+            return false;
+        }
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            try {
+                switch (format[i]) {
+                    case "L":
+                        Long.parseLong(part);
+                        break;
+                    case "I":
+                        Integer.parseInt(part);
+                        break;
+                    case "D":
+                        if (!NumberUtil.isNumber(part) || !Double.isFinite(Double.parseDouble(part))) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        if (!format[i].equals(part)) {
+                            return false;
+                        }
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按距离环带查询Redis GEO集合，用于附近商铺的游标分页
+ * GEOSEARCH总是从圆心开始，无法跳过游标之前的成员；GEO集合本身是以52位geohash为score的ZSET，
+ * 这里把游标距离到外半径之间的环带覆盖为若干geohash网格，每个网格是一段连续的score区间，
+ * 用一个pipeline对每个区间执行ZRANGEBYSCORE，在本地解码坐标、计算距离并过滤。
+ * 环带宽度按游标中已返回的条数估算的密度选取，不够一页时加倍向外扩展；
+ * 每页读取的成员只与环带面积有关，不再包含游标之前的所有成员
+ */
+@Component
+public class GeoBandSearch {
+
+    // 与Redis geohash.h相同的坐标范围和精度
+    private static final double LAT_MIN = -85.05112878;
+    private static final double LAT_MAX = 85.05112878;
+    private static final double LON_MIN = -180;
+    private static final double LON_MAX = 180;
+    private static final int STEP = 26;
+    private static final double METERS_PER_DEGREE = Math.PI * ShopSpatialIndex.EARTH_RADIUS_METERS / 180;
+
+    // 无法估算密度时（第一页、旧格式游标）第一个环带的宽度（米）
+    private static final double DEFAULT_BAND_METERS = 1000;
+    private static final double MIN_BAND_METERS = 10;
+    // 每个环带最多的score区间数，超过时改用更粗的网格
+    private static final int MAX_RANGES = 64;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public GeoBandSearch(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 查询多个GEO集合中半径内、排在游标之后最近的limit个成员
+     * @param keys GEO集合，成员为店铺id
+     * @param x 经度
+     * @param y 纬度
+     * @param radius 半径（米）
+     * @param afterDistance 游标：上一页最后一条的距离，第一页传负数
+     * @param afterId 游标：上一页最后一条的id
+     * @param offset 游标之前已返回的条数，用于估算密度，未知时传-1
+     * @param limit 条数
+     * @return 按 (距离, id) 升序，距离保留4位小数
+     */
+    public List<ShopSpatialIndex.Hit> search(List<String> keys, double x, double y, double radius,
+                                             double afterDistance, long afterId, long offset, int limit) {
+        List<ShopSpatialIndex.Hit> result = new ArrayList<>(limit);
+        double inner = Math.max(afterDistance, 0);
+        double width = initialWidth(inner, offset, limit, radius);
+        // 环带的下界：第一个环带为游标，之后为上一个环带的外半径（不含）
+        double lowDistance = afterDistance;
+        long lowId = afterId;
+        while (result.size() < limit && inner <= radius) {
+            double outer = Math.min(radius, inner + width);
+            // 1.查询环带内的成员，环带之间按距离有序，直接追加
+            List<ShopSpatialIndex.Hit> band = band(keys, x, y, inner, outer, lowDistance, lowId);
+            Collections.sort(band);
+            result.addAll(band);
+            if (outer >= radius) {
+                break;
+            }
+            // 2.不够一页，加倍向外扩展
+            inner = outer;
+            lowDistance = outer;
+            lowId = Long.MAX_VALUE;
+            width *= 2;
+        }
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 按已返回的条数估算密度：半径为inner的圆内约有offset个成员，
+     * 宽为w的环带内约有 2 * offset * w / inner 个，取两倍余量约为 limit * inner / offset
+     */
+    private static double initialWidth(double inner, long offset, int limit, double radius) {
+        double width = offset > 0 && inner > 0 ? limit * inner / offset : DEFAULT_BAND_METERS;
+        return Math.min(Math.max(width, MIN_BAND_METERS), Math.max(radius, MIN_BAND_METERS));
+    }
+
+    // 查询一个环带：(lowDistance, lowId) 之后、距离不超过outer的成员
+    private List<ShopSpatialIndex.Hit> band(List<String> keys, double x, double y, double inner, double outer,
+                                            double lowDistance, long lowId) {
+        List<long[]> ranges = cover(x, y, inner, outer);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                for (long[] range : ranges) {
+                    connection.zSetCommands().zRangeByScoreWithScores(rawKey,
+                            RedisZSetCommands.Range.range().gte(range[0]).lt(range[1]));
+                }
+            }
+            return null;
+        });
+        List<ShopSpatialIndex.Hit> hits = new ArrayList<>();
+        for (Object result : results) {
+            for (Object item : (Collection<?>) result) {
+                ZSetOperations.TypedTuple<?> tuple = (ZSetOperations.TypedTuple<?>) item;
+                double[] point = decode(tuple.getScore().longValue());
+                double distance = ShopSpatialIndex.distance(x, y, point[0], point[1]);
+                long id = Long.parseLong(String.valueOf(tuple.getValue()));
+                if (distance <= outer && (distance > lowDistance || (distance == lowDistance && id > lowId))) {
+                    hits.add(new ShopSpatialIndex.Hit(id, distance));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 用geohash网格覆盖环带，返回合并后的score区间 [min, max)
+     * 网格边长取环带宽度与 sqrt(inner * 宽度) 中的较大者：网格越细，环带外多读的成员越少，但区间越多，
+     * 两者的乘积随深度只按平方根增长；区间数超过MAX_RANGES时改用更粗的网格
+     */
+    static List<long[]> cover(double x, double y, double inner, double outer) {
+        double width = Math.max(outer - inner, MIN_BAND_METERS);
+        double side = Math.max(width, Math.sqrt(inner * width));
+        // 经度方向的网格随纬度缩短，按环带内纬度最高处计算
+        double dLat = outer / METERS_PER_DEGREE;
+        double maxLat = Math.min(Math.abs(y) + dLat, 89.0);
+        double cos = Math.max(Math.cos(Math.toRadians(maxLat)), 0.01);
+        int level = STEP;
+        while (level > 1 && cellMeters(level, cos) < side) {
+            level--;
+        }
+        while (true) {
+            List<long[]> ranges = cover(x, y, inner, outer, dLat, dLat / cos, level);
+            if (ranges.size() <= MAX_RANGES || level == 1) {
+                return ranges;
+            }
+            level--;
+        }
+    }
+
+    private static List<long[]> cover(double x, double y, double inner, double outer,
+                                      double dLat, double dLon, int level) {
+        long cells = 1L << level;
+        double latStep = (LAT_MAX - LAT_MIN) / cells;
+        double lonStep = (LON_MAX - LON_MIN) / cells;
+        long lat0 = index(y - dLat, LAT_MIN, latStep, cells);
+        long lat1 = index(y + dLat, LAT_MIN, latStep, cells);
+        long lon0 = index(x - dLon, LON_MIN, lonStep, cells);
+        long lon1 = index(x + dLon, LON_MIN, lonStep, cells);
+        // 网格边界与距离计算的误差余量
+        double slack = 1 + 0.01 * latStep * METERS_PER_DEGREE;
+        int shift = 2 * (STEP - level);
+        List<long[]> starts = new ArrayList<>();
+        for (long i = lat0; i <= lat1; i++) {
+            double south = LAT_MIN + i * latStep;
+            double north = south + latStep;
+            for (long j = lon0; j <= lon1; j++) {
+                double west = LON_MIN + j * lonStep;
+                double east = west + lonStep;
+                // 只保留与环带相交的网格：最近点不超过外半径，最远点不小于内半径
+                double near = ShopSpatialIndex.distance(x, y, clamp(x, west, east), clamp(y, south, north));
+                double far = Math.max(
+                        Math.max(ShopSpatialIndex.distance(x, y, west, south), ShopSpatialIndex.distance(x, y, west, north)),
+                        Math.max(ShopSpatialIndex.distance(x, y, east, south), ShopSpatialIndex.distance(x, y, east, north)));
+                if (near > outer + slack || far < inner - slack) {
+                    continue;
+                }
+                long hash = interleave(i, j);
+                starts.add(new long[]{hash << shift, (hash + 1) << shift});
+            }
+        }
+        // 按score排序，合并相邻的区间
+        starts.sort((a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> ranges = new ArrayList<>();
+        for (long[] range : starts) {
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == range[0]) {
+                last[1] = range[1];
+            } else {
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    private static double cellMeters(int level, double cos) {
+        double cells = 1L << level;
+        return Math.min((LAT_MAX - LAT_MIN) / cells * METERS_PER_DEGREE,
+                (LON_MAX - LON_MIN) / cells * METERS_PER_DEGREE * cos);
+    }
+
+    private static long index(double value, double min, double step, long cells) {
+        long i = (long) Math.floor((value - min) / step);
+        return Math.min(Math.max(i, 0), cells - 1);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.min(Math.max(value, min), max);
+    }
+
+    // 纬度占偶数位、经度占奇数位，与Redis的interleave64一致
+    static long interleave(long lat, long lon) {
+        long hash = 0;
+        for (int bit = 0; bit < STEP; bit++) {
+            hash |= ((lat >>> bit) & 1L) << (2 * bit);
+            hash |= ((lon >>> bit) & 1L) << (2 * bit + 1);
+        }
+        return hash;
+    }
+
+    /**
+     * 把GEO成员的score解码为网格中心的经纬度，与GEOPOS、GEOSEARCH使用的坐标相同
+     * @return {经度, 纬度}
+     */
+    static double[] decode(long hash) {
+        long lat = 0;
+        long lon = 0;
+        for (int bit = 0; bit < STEP; bit++) {
+            lat |= ((hash >>> (2 * bit)) & 1L) << bit;
+            lon |= ((hash >>> (2 * bit + 1)) & 1L) << bit;
+        }
+        // 与geohashDecode相同：先算网格的边界，再取中点
+        double cells = 1L << STEP;
+        double south = LAT_MIN + (lat / cells) * (LAT_MAX - LAT_MIN);
+        double north = LAT_MIN + ((lat + 1) / cells) * (LAT_MAX - LAT_MIN);
+        double west = LON_MIN + (lon / cells) * (LON_MAX - LON_MIN);
+        double east = LON_MIN + ((lon + 1) / cells) * (LON_MAX - LON_MIN);
+        double latitude = (south + north) / 2;
+        double longitude = (west + east) / 2;
+        return new double[]{clamp(longitude, LON_MIN, LON_MAX), clamp(latitude, LAT_MIN, LAT_MAX)};
+    }
+}
@@ -0,0 +1,173 @@
+package com.hmdp.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点key探测
+ * 每个节点用无锁的Count-Min Sketch统计key的访问频率，定期整体减半实现衰减；
+ * 频率超过阈值的key被自动提升为短TTL的本地副本，减轻热点key所在Redis分片的压力
+ */
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+
+    @Value("${hmdp.hotkey.enabled:true}")
+    private boolean enabled;
+    // 一个衰减周期内的访问次数超过阈值即为热点
+    @Value("${hmdp.hotkey.threshold:500}")
+    private long threshold;
+    @Value("${hmdp.hotkey.width:16384}")
+    private int width;
+    @Value("${hmdp.hotkey.decay-interval-seconds:10}")
+    private long decayIntervalSeconds;
+    @Value("${hmdp.hotkey.replica-ttl-seconds:5}")
+    private long replicaTtlSeconds;
+    @Value("${hmdp.hotkey.replica-maximum-size:1000}")
+    private long replicaMaximumSize;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // DEPTH行 * width列的计数器，第i行的第j列位于 i * width + j
+    private AtomicLongArray counters;
+    // 当前的热点key及其估计频率，长时间没有访问则移除
+    private Cache<String, Long> hotKeys;
+    // 热点key的本地副本
+    private Cache<String, Object> replicas;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init(){
+        counters = new AtomicLongArray(DEPTH * width);
+        hotKeys = CacheBuilder.newBuilder()
+                .maximumSize(replicaMaximumSize)
+                .expireAfterWrite(decayIntervalSeconds * 3, TimeUnit.SECONDS)
+                .build();
+        replicas = CacheBuilder.newBuilder()
+                .maximumSize(replicaMaximumSize)
+                .expireAfterWrite(replicaTtlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, replicas, "hotkey-replica");
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hotkey-decay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::decay, decayIntervalSeconds, decayIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy(){
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问
+     * @param key
+     * @return 是否为热点key
+     */
+    public boolean record(String key){
+        if (!enabled) {
+            return false;
+        }
+        long estimate = Long.MAX_VALUE;
+        for (int index : indexes(key)) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        if (estimate >= threshold) {
+            hotKeys.put(key, estimate);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 估计访问频率，不计数
+     * @param key
+     * @return
+     */
+    public long estimate(String key){
+        if (!enabled) {
+            return 0;
+        }
+        long estimate = Long.MAX_VALUE;
+        for (int index : indexes(key)) {
+            estimate = Math.min(estimate, counters.get(index));
+        }
+        return estimate;
+    }
+
+    // 每一行的计数器下标，双重哈希
+    private int[] indexes(String key){
+        long hash = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int[] indexes = new int[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            indexes[i] = i * width + Math.floorMod(h1 + i * h2, width);
+        }
+        return indexes;
+    }
+
+    public boolean isHot(String key){
+        return hotKeys.getIfPresent(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> R getReplica(String key){
+        return (R) replicas.getIfPresent(key);
+    }
+
+    public void putReplica(String key, Object value){
+        if (value != null) {
+            replicas.put(key, value);
+        }
+    }
+
+    public void invalidate(String key){
+        replicas.invalidate(key);
+    }
+
+    /**
+     * 当前热点key，按估计频率从高到低排序
+     * @return
+     */
+    public List<Map<String, Object>> hotKeys(){
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.asMap().entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<Map<String, Object>> list = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Long> entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("estimate", entry.getValue());
+            item.put("replicated", replicas.getIfPresent(entry.getKey()) != null);
+            list.add(item);
+        }
+        return list;
+    }
+
+    // 所有计数减半，旧的访问逐渐失去权重
+    private void decay(){
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, v -> v >> 1);
+        }
+    }
+}
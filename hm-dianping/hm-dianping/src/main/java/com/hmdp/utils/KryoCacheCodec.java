@@ -0,0 +1,142 @@
+package com.hmdp.utils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import com.esotericsoftware.kryo.util.Pool;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于Kryo的二进制编解码器
+ * 格式：[MAGIC][VERSION][逻辑过期时间][重建耗时][Kryo数据]，MAGIC不是合法的UTF-8首字节，因此可以和JSON数据区分
+ * 使用CompatibleFieldSerializer按字段名写入，实体增删字段后新旧节点仍可互相读取；
+ * 要求注册类型，缓存数据中只能出现下面注册过的类，不会按数据中的类名加载任意类
+ */
+@Component
+public class KryoCacheCodec implements CacheCodec {
+
+    public static final String NAME = "kryo";
+
+    private static final byte MAGIC = (byte) 0xC1;
+    private static final byte VERSION = 1;
+
+    // Kryo不是线程安全的，使用对象池复用
+    private static final Pool<Kryo> KRYO_POOL = new Pool<Kryo>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(true);
+            kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
+            // 类id写入缓存数据，已有的id不能修改，新类型只能在末尾追加
+            kryo.register(ArrayList.class, 100);
+            kryo.register(Shop.class, 101);
+            kryo.register(ShopType.class, 102);
+            kryo.register(Blog.class, 103);
+            kryo.register(RedisData.class, 104);
+            kryo.register(LocalDateTime.class, 105);
+            return kryo;
+        }
+    };
+    private static final Pool<Output> OUTPUT_POOL = new Pool<Output>(true, false, 64) {
+        @Override
+        protected Output create() {
+            return new Output(1024, -1);
+        }
+    };
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(byte[] bytes) {
+        return bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(null, null, value);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return type.cast(read(bytes).data);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> List<R> decodeList(byte[] bytes, Class<R> type) {
+        return (List<R>) read(bytes).data;
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        return write(redisData.getExpireTime(), redisData.getDelta(), redisData.getData());
+    }
+
+    @Override
+    public RedisData decodeWithExpire(byte[] bytes, Class<?> type) {
+        Envelope envelope = read(bytes);
+        return new RedisData(envelope.expireTime, envelope.data, envelope.delta);
+    }
+
+    private byte[] write(LocalDateTime expireTime, Long delta, Object value) {
+        if (value instanceof List && !(value instanceof ArrayList)) {
+            value = new ArrayList<>((List<?>) value);
+        }
+        Kryo kryo = KRYO_POOL.obtain();
+        Output output = OUTPUT_POOL.obtain();
+        try {
+            output.reset();
+            output.writeByte(MAGIC);
+            output.writeByte(VERSION);
+            // 逻辑过期时间以毫秒时间戳保存，0表示没有
+            output.writeVarLong(expireTime == null ? 0
+                    : expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), true);
+            // 重建耗时（毫秒），0表示没有
+            output.writeVarLong(delta == null ? 0 : delta, true);
+            kryo.writeClassAndObject(output, value);
+            return output.toBytes();
+        } finally {
+            OUTPUT_POOL.free(output);
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private Envelope read(byte[] bytes) {
+        if (bytes[1] != VERSION) {
+            throw new IllegalStateException("不支持的缓存数据版本：" + bytes[1]);
+        }
+        Kryo kryo = KRYO_POOL.obtain();
+        try {
+            Input input = new Input(bytes, 2, bytes.length - 2);
+            long expireMillis = input.readVarLong(true);
+            Envelope envelope = new Envelope();
+            envelope.expireTime = expireMillis == 0 ? null
+                    : LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault());
+            long delta = input.readVarLong(true);
+            envelope.delta = delta == 0 ? null : delta;
+            envelope.data = kryo.readClassAndObject(input);
+            return envelope;
+        } finally {
+            KRYO_POOL.free(kryo);
+        }
+    }
+
+    private static class Envelope {
+        private LocalDateTime expireTime;
+        private Object data;
+        private Long delta;
+    }
+}
@@ -0,0 +1,87 @@
+package com.hmdp.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内一级缓存（L1），保存已经反序列化好的对象，按容量和TTL淘汰
+ */
+@Component
+public class LocalCache {
+
+    @Value("${hmdp.cache.local.enabled:false}")
+    private boolean enabled;
+    @Value("${hmdp.cache.local.maximum-size:1000}")
+    private long maximumSize;
+    @Value("${hmdp.cache.local.ttl-seconds:60}")
+    private long ttlSeconds;
+    // 只有这些前缀的key才会进入L1
+    @Value("${hmdp.cache.local.key-prefixes:cache:shop:}")
+    private String[] keyPrefixes;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Cache<String, Object> cache;
+
+    @PostConstruct
+    public void init(){
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 命中、淘汰、容量等指标
+        GuavaCacheMetrics.monitor(meterRegistry, cache, "local");
+    }
+
+    /**
+     * 判断该前缀的key是否使用L1
+     * @param keyPrefix
+     * @return
+     */
+    public boolean accept(String keyPrefix){
+        if(!enabled){
+            return false;
+        }
+        for (String prefix : keyPrefixes) {
+            if(prefix.equals(keyPrefix)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> R get(String key){
+        return (R) cache.getIfPresent(key);
+    }
+
+    public void put(String key, Object value){
+        // Guava不允许存null，空值交给Redis层处理
+        if(value != null){
+            cache.put(key, value);
+        }
+    }
+
+    public void invalidate(String key){
+        cache.invalidate(key);
+    }
+
+    public long size(){
+        return cache.size();
+    }
+
+    public CacheStats stats(){
+        return cache.stats();
+    }
+}
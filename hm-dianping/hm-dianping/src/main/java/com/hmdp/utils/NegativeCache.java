@@ -0,0 +1,147 @@
+package com.hmdp.utils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+
+/**
+ * 空值缓存（数据库中不存在的id），代替每个id一个空字符串key
+ * 按时间分桶、按id区间分片的Redis位图：cache:null:{name}:{bucket}:{id >> 10}，每个id只占1位。
+ * 桶的长度为 CACHE_NULL_TTL，读取时检查当前桶和上一个桶，标记的有效期在 TTL ~ 2*TTL 之间，
+ * 过期的桶整体由Redis删除
+ */
+@Component
+public class NegativeCache {
+
+    // 每个分片覆盖 2^10 个id，位图最大128字节：SETBIT按最大偏移分配内存，
+    // 稀疏或随机的大id每个最多占用一个小分片，与原来的空字符串key同一量级
+    private static final int SHARD_BITS = 10;
+    private static final long SHARD_MASK = (1L << SHARD_BITS) - 1;
+    private static final long BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL);
+
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT;
+    static {
+        REMOVE_SCRIPT = new DefaultRedisScript<>();
+        REMOVE_SCRIPT.setLocation(new ClassPathResource("negative_remove.lua"));
+        REMOVE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public NegativeCache(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 只有非负的整数id可以放进位图
+     * @param id
+     * @return
+     */
+    public static boolean supports(Object id){
+        return (id instanceof Long || id instanceof Integer) && ((Number) id).longValue() >= 0;
+    }
+
+    /**
+     * 判断id是否被标记为不存在
+     * @param keyPrefix 数据的缓存前缀，如 cache:shop:
+     * @param id
+     * @return
+     */
+    public boolean contains(String keyPrefix, long id){
+        return !containsAll(keyPrefix, Collections.singletonList(id)).isEmpty();
+    }
+
+    /**
+     * 批量判断，一个pipeline完成
+     * @return 被标记为不存在的id
+     */
+    public Set<Long> containsAll(String keyPrefix, Collection<Long> ids){
+        Set<Long> result = new HashSet<>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        long bucket = currentBucket();
+        List<Long> idList = new ArrayList<>(ids);
+        List<Object> bits = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : idList) {
+                // 当前桶和上一个桶
+                connection.stringCommands().getBit(key(keyPrefix, bucket, id), offset(id));
+                connection.stringCommands().getBit(key(keyPrefix, bucket - 1, id), offset(id));
+            }
+            return null;
+        });
+        for (int i = 0; i < idList.size(); i++) {
+            if (Boolean.TRUE.equals(bits.get(2 * i)) || Boolean.TRUE.equals(bits.get(2 * i + 1))) {
+                result.add(idList.get(i));
+            }
+        }
+        return result;
+    }
+
+    public void add(String keyPrefix, long id){
+        addAll(keyPrefix, Collections.singletonList(id));
+    }
+
+    /**
+     * 标记为不存在，写入当前桶
+     */
+    public void addAll(String keyPrefix, Collection<Long> ids){
+        if (ids.isEmpty()) {
+            return;
+        }
+        long bucket = currentBucket();
+        // 桶内最后一次写入后再保留两个桶长，保证覆盖到下一个桶结束
+        long ttlSeconds = TimeUnit.MILLISECONDS.toSeconds(2 * BUCKET_MILLIS);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                byte[] key = key(keyPrefix, bucket, id);
+                connection.stringCommands().setBit(key, offset(id), true);
+                connection.keyCommands().expire(key, ttlSeconds);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 数据被创建时清除标记（当前桶和上一个桶）
+     */
+    public void remove(String keyPrefix, long id){
+        long bucket = currentBucket();
+        stringRedisTemplate.execute(REMOVE_SCRIPT,
+                Arrays.asList(keyName(keyPrefix, bucket - 1, id), keyName(keyPrefix, bucket, id)),
+                String.valueOf(offset(id)));
+    }
+
+    private static long currentBucket(){
+        return System.currentTimeMillis() / BUCKET_MILLIS;
+    }
+
+    private static byte[] key(String keyPrefix, long bucket, long id){
+        return keyName(keyPrefix, bucket, id).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String keyName(String keyPrefix, long bucket, long id){
+        // cache:shop: -> cache:null:shop:{bucket}:{shard}
+        String name = keyPrefix.startsWith("cache:") ? keyPrefix.substring("cache:".length()) : keyPrefix;
+        return CACHE_NULL_KEY + name + bucket + ":" + (id >> SHARD_BITS);
+    }
+
+    private static long offset(long id){
+        return id & SHARD_MASK;
+    }
+}
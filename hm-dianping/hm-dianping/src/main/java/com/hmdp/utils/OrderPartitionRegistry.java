@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.ORDER_CONSUMERS_KEY;
+
+/**
+ * 订单消费者成员表
+ * 每个节点定期把自己的成员id和心跳时间写入ZSET，超过心跳超时未续期的节点被移除，
+ * 存活节点按成员id排序后轮流分配分区：第i个节点负责 p % n == i 的分区，节点加入或退出后下一次心跳即重新分配
+ */
+@Slf4j
+@Component
+public class OrderPartitionRegistry {
+
+    @Value("${hmdp.order.heartbeat-seconds:5}")
+    private long heartbeatSeconds;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 成员id：pid@主机名 + 随机后缀，同一进程内不变，也用作消费者名的前缀
+    private final String memberId = ManagementFactory.getRuntimeMXBean().getName() + "-" + RandomUtil.randomString(6);
+
+    public String getMemberId(){
+        return memberId;
+    }
+
+    public long getHeartbeatSeconds(){
+        return heartbeatSeconds;
+    }
+
+    /**
+     * 续期心跳，清理超时的节点，返回本节点负责的分区
+     * @param partitions 分区总数
+     * @return 本节点负责的分区
+     */
+    public Set<Integer> heartbeat(int partitions){
+        long now = System.currentTimeMillis();
+        // 1.续期自己的心跳
+        stringRedisTemplate.opsForZSet().add(ORDER_CONSUMERS_KEY, memberId, now);
+        // 2.移除超过3个心跳周期没有续期的节点
+        stringRedisTemplate.opsForZSet().removeRangeByScore(ORDER_CONSUMERS_KEY, 0, now - heartbeatSeconds * 3000);
+        // 3.所有节点按成员id排序，保证各节点算出的分配一致
+        Set<String> members = stringRedisTemplate.opsForZSet().range(ORDER_CONSUMERS_KEY, 0, -1);
+        List<String> sorted = members == null ? new ArrayList<>() : new ArrayList<>(members);
+        Collections.sort(sorted);
+        int index = sorted.indexOf(memberId);
+        if (index < 0) {
+            return Collections.emptySet();
+        }
+        // 4.轮流分配分区
+        Set<Integer> owned = new HashSet<>();
+        for (int p = index; p < partitions; p += sorted.size()) {
+            owned.add(p);
+        }
+        return owned;
+    }
+
+    /**
+     * 当前存活的节点，用于清理已下线节点的消费者
+     * @return 成员id
+     */
+    public Set<String> members(){
+        Set<String> members = stringRedisTemplate.opsForZSet().range(ORDER_CONSUMERS_KEY, 0, -1);
+        return members == null ? Collections.emptySet() : members;
+    }
+
+    /**
+     * 节点下线，其他节点在下一次心跳时接管分区
+     */
+    public void leave(){
+        try {
+            stringRedisTemplate.opsForZSet().remove(ORDER_CONSUMERS_KEY, memberId);
+        } catch (Exception e) {
+            log.warn("移除订单消费者成员失败：{}", memberId, e);
+        }
+    }
+}
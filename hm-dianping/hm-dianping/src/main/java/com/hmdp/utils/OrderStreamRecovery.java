@@ -0,0 +1,281 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DLQ_KEY;
+
+/**
+ * 订单流的PendingList恢复
+ * 定期用 XAUTOCLAIM 认领空闲超时的消息（包括已宕机节点上的消费者），按业务处理失败的次数控制重试：
+ * 失败次数达到上限的消息连同最后一次的异常转入死信流 stream.orders.dlq 并确认，避免一条坏消息阻塞整个分区。
+ * 空指针等程序错误单独计数、上限更高，给修复留出时间，但仍然有上限，达到后同样转入死信流，不会无限重试
+ */
+@Slf4j
+@Component
+public class OrderStreamRecovery {
+
+    public static final String GROUP = "g1";
+
+    // 空闲超过该时间的消息才会被认领
+    @Value("${hmdp.order.recovery.min-idle-ms:30000}")
+    private long minIdleMs;
+    // 最多失败次数，达到后转入死信流
+    @Value("${hmdp.order.recovery.max-failures:5}")
+    private long maxFailures;
+    // 程序错误（空指针等）最多失败次数，达到后同样转入死信流
+    @Value("${hmdp.order.recovery.max-programming-failures:50}")
+    private long maxProgrammingFailures;
+    // 每个分区每次最多认领的消息数
+    @Value("${hmdp.order.recovery.claim-count:100}")
+    private int claimCount;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private static final DefaultRedisScript<List> RECOVER_SCRIPT;
+    static {
+        RECOVER_SCRIPT = new DefaultRedisScript<>();
+        RECOVER_SCRIPT.setLocation(new ClassPathResource("order_recover.lua"));
+        RECOVER_SCRIPT.setResultType(List.class);
+    }
+
+    // 各分区的待确认消息数、最早一条待确认消息的滞后时间（毫秒）
+    private final Map<String, AtomicLong> pendingGauges = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> lagGauges = new ConcurrentHashMap<>();
+
+    /**
+     * 认领空闲超时的消息，失败次数达到上限的转入死信流，其余返回给调用方重新处理
+     * @param stream 订单流分区
+     * @param consumer 认领到的消费者
+     * @return 需要重新处理的消息
+     */
+    @SuppressWarnings("unchecked")
+    public List<Claimed> claim(String stream, String consumer){
+        List<Claimed> claimed = new ArrayList<>();
+        String cursor = "0-0";
+        do {
+            // 1.认领一批消息
+            List<Object> result = stringRedisTemplate.execute(RECOVER_SCRIPT, Collections.singletonList(stream),
+                    GROUP, consumer, String.valueOf(minIdleMs), cursor, String.valueOf(claimCount - claimed.size()));
+            if (result == null || result.isEmpty()) {
+                break;
+            }
+            cursor = String.valueOf(result.get(0));
+            // 2.解析 id, 投递次数, 字段列表
+            List<Claimed> batch = new ArrayList<>();
+            for (int i = 1; i + 2 < result.size(); i += 3) {
+                String id = String.valueOf(result.get(i));
+                long deliveries = ((Number) result.get(i + 1)).longValue();
+                List<Object> fields = (List<Object>) result.get(i + 2);
+                Map<String, String> values = new HashMap<>(fields.size() / 2);
+                for (int j = 0; j + 1 < fields.size(); j += 2) {
+                    values.put(String.valueOf(fields.get(j)), String.valueOf(fields.get(j + 1)));
+                }
+                batch.add(new Claimed(RecordId.of(id), deliveries, 0, 0, values));
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            // 3.一次查询这批消息的两种失败次数，顺序为 业务失败, 程序错误, 业务失败, 程序错误...
+            List<Object> failureFields = new ArrayList<>(batch.size() * 2);
+            for (Claimed message : batch) {
+                failureFields.add(failuresField(message.getId().getValue()));
+                failureFields.add(programmingFailuresField(message.getId().getValue()));
+            }
+            List<Object> failures = stringRedisTemplate.opsForHash().multiGet(errorsKey(stream), failureFields);
+            for (int i = 0; i < batch.size(); i++) {
+                Claimed message = batch.get(i);
+                message.setFailures(count(failures.get(2 * i)));
+                message.setProgrammingFailures(count(failures.get(2 * i + 1)));
+                // 4.任意一种失败次数达到上限，转入死信流
+                if (message.getFailures() >= maxFailures || message.getProgrammingFailures() >= maxProgrammingFailures) {
+                    deadLetter(stream, message);
+                    continue;
+                }
+                claimed.add(message);
+            }
+        } while (!"0-0".equals(cursor) && claimed.size() < claimCount);
+        return claimed;
+    }
+
+    private static long count(Object value){
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    /**
+     * 记录处理失败的原因和次数，转入死信流时一并写入；程序错误单独计数
+     */
+    public void failed(String stream, RecordId id, Exception e){
+        boolean programmingError = isProgrammingError(e);
+        Counter.builder("order.stream.failures")
+                .description("订单消息处理失败次数")
+                .tag("stream", stream)
+                .tag("type", programmingError ? "programming" : "business")
+                .register(meterRegistry)
+                .increment();
+        String error = e.getClass().getSimpleName() + ": " + StrUtil.maxLength(StrUtil.nullToEmpty(e.getMessage()), 500);
+        String errorsKey = errorsKey(stream);
+        stringRedisTemplate.opsForHash().put(errorsKey, id.getValue(), error);
+        // 程序错误多半与消息本身无关，使用更高的上限等待修复，但不能让坏消息无限重试
+        stringRedisTemplate.opsForHash().increment(errorsKey,
+                programmingError ? programmingFailuresField(id.getValue()) : failuresField(id.getValue()), 1);
+        stringRedisTemplate.expire(errorsKey, 1, TimeUnit.DAYS);
+    }
+
+    // 空指针、类型转换、越界等是代码缺陷，不是订单数据的问题
+    private static boolean isProgrammingError(Throwable e){
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof NullPointerException || t instanceof ClassCastException
+                    || t instanceof IndexOutOfBoundsException || t instanceof UnsupportedOperationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 认领的消息重新处理成功
+     */
+    public void recovered(String stream, RecordId id){
+        stringRedisTemplate.opsForHash().delete(errorsKey(stream),
+                id.getValue(), failuresField(id.getValue()), programmingFailuresField(id.getValue()));
+        Counter.builder("order.stream.recovered")
+                .description("从PendingList恢复的订单消息数")
+                .tag("stream", stream)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // 转入死信流并确认原消息，附带来源、投递次数、失败次数和最后一次的异常
+    private void deadLetter(String stream, Claimed message){
+        String id = message.getId().getValue();
+        String errorsKey = errorsKey(stream);
+        Object error = stringRedisTemplate.opsForHash().get(errorsKey, id);
+        Map<String, String> dead = new HashMap<>(message.getValues());
+        dead.put("stream", stream);
+        dead.put("messageId", id);
+        dead.put("deliveries", String.valueOf(message.getDeliveries()));
+        dead.put("failures", String.valueOf(message.getFailures()));
+        dead.put("programmingFailures", String.valueOf(message.getProgrammingFailures()));
+        dead.put("error", error == null ? "" : error.toString());
+        stringRedisTemplate.opsForStream().add(StreamRecords.newRecord().in(SECKILL_ORDER_DLQ_KEY).ofMap(dead));
+        stringRedisTemplate.opsForStream().acknowledge(stream, GROUP, id);
+        stringRedisTemplate.opsForHash().delete(errorsKey, id, failuresField(id), programmingFailuresField(id));
+        Counter.builder("order.stream.dead_letter")
+                .description("转入死信流的订单消息数")
+                .tag("stream", stream)
+                .register(meterRegistry)
+                .increment();
+        log.error("订单消息超过重试次数，已转入死信流，stream:{}, id:{}, failures:{}, programmingFailures:{}, error:{}",
+                stream, id, message.getFailures(), message.getProgrammingFailures(), error);
+    }
+
+    // 失败原因和次数：field为消息id时是最后一次的异常，id:failures为业务失败次数，id:programming-failures为程序错误次数
+    private static String errorsKey(String stream){
+        return stream + ":errors";
+    }
+
+    private static String failuresField(String id){
+        return id + ":failures";
+    }
+
+    private static String programmingFailuresField(String id){
+        return id + ":programming-failures";
+    }
+
+    /**
+     * 删除已下线节点的消费者
+     * 节点每次启动的成员id都不同，下线或心跳超时后其消费者仍留在消费者组中，越积越多。
+     * 成员表中已没有其成员id、PendingList已被认领为空、且空闲超过认领阈值的消费者才删除：
+     * DELCONSUMER会丢弃该消费者的PendingList，空闲时间保证心跳超时但仍在运行的节点没有刚读到的消息
+     * @param stream 订单流分区
+     * @param members 存活节点的成员id
+     */
+    public void removeDeadConsumers(String stream, Collection<String> members){
+        StreamInfo.XInfoConsumers consumers = stringRedisTemplate.opsForStream().consumers(stream, GROUP);
+        for (int i = 0; i < consumers.size(); i++) {
+            StreamInfo.XInfoConsumer consumer = consumers.get(i);
+            String name = consumer.consumerName();
+            // 消费者名以成员id开头：memberId-分区-线程号、memberId-分区-recovery
+            if (members.stream().anyMatch(member -> name.startsWith(member + "-"))) {
+                continue;
+            }
+            if (consumer.pendingCount() > 0 || consumer.idleTimeMs() < minIdleMs) {
+                continue;
+            }
+            stringRedisTemplate.opsForStream().deleteConsumer(stream, Consumer.from(GROUP, name));
+            log.info("删除已下线节点的订单流消费者，stream:{}, consumer:{}", stream, name);
+        }
+    }
+
+    /**
+     * 刷新分区的待确认消息数和恢复滞后时间（最早一条待确认消息距今的时间）
+     * @param stream 订单流分区
+     */
+    public void refreshMetrics(String stream){
+        PendingMessagesSummary summary = stringRedisTemplate.opsForStream().pending(stream, GROUP);
+        long pending = summary == null ? 0 : summary.getTotalPendingMessages();
+        long lag = 0;
+        if (pending > 0 && summary.minMessageId() != null) {
+            lag = Math.max(0, System.currentTimeMillis() - RecordId.of(summary.minMessageId()).getTimestamp());
+        }
+        gauge(pendingGauges, "order.stream.pending", "待确认的订单消息数", stream).set(pending);
+        gauge(lagGauges, "order.stream.recovery.lag", "最早一条待确认订单消息的滞后时间（毫秒）", stream).set(lag);
+    }
+
+    private AtomicLong gauge(Map<String, AtomicLong> gauges, String name, String description, String stream){
+        return gauges.computeIfAbsent(stream, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder(name, value, AtomicLong::get)
+                    .description(description)
+                    .tag("stream", key)
+                    .register(meterRegistry);
+            return value;
+        });
+    }
+
+    /**
+     * 认领到的消息
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Claimed {
+        private RecordId id;
+        // 投递次数，包含本次认领
+        private long deliveries;
+        // 业务处理失败的次数，不含程序错误
+        private long failures;
+        // 程序错误（空指针等）导致的失败次数
+        private long programmingFailures;
+        private Map<String, String> values;
+    }
+}
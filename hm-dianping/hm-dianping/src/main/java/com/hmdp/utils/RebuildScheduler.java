@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存重建调度器，所有异步重建共用
+ * 1.同一个key在排队或执行中时不会重复提交
+ * 2.队列有界，满了直接拒绝，调用方继续返回旧数据，数据库变慢时重建风暴不会无限堆积
+ * 3.按key的热度排序，越热的key越先重建
+ * 4.每个重建任务有超时时间，超时后中断执行线程
+ * 5.随Spring容器关闭，等待正在执行的任务完成
+ */
+@Slf4j
+@Component
+public class RebuildScheduler {
+
+    @Value("${hmdp.rebuild.threads:10}")
+    private int threads;
+    @Value("${hmdp.rebuild.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${hmdp.rebuild.timeout-ms:5000}")
+    private long timeoutMillis;
+    @Value("${hmdp.rebuild.shutdown-timeout-seconds:10}")
+    private long shutdownTimeoutSeconds;
+
+    private final HotKeyDetector hotKeyDetector;
+    private final CacheMetrics metrics;
+
+    // 排队或执行中的key
+    private final Map<String, RebuildTask> pending = new ConcurrentHashMap<>();
+    // 已排队未执行的任务数，PriorityBlockingQueue本身无界，由它限制容量
+    private final AtomicInteger queued = new AtomicInteger();
+    // 同样热度时按提交顺序执行
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+    private ScheduledExecutorService watchdog;
+
+    public RebuildScheduler(HotKeyDetector hotKeyDetector, CacheMetrics metrics) {
+        this.hotKeyDetector = hotKeyDetector;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init(){
+        AtomicInteger index = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), r -> new Thread(r, "cache-rebuild-" + index.incrementAndGet()));
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-rebuild-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.monitor("rebuild-scheduler", executor);
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存key，用于去重和计算热度
+     * @param task 重建任务
+     * @param onRejected 未提交成功时执行（如释放重建锁），调用方继续使用旧数据
+     * @return 是否提交成功（已在排队也算成功）
+     */
+    public boolean submit(String key, Runnable task, Runnable onRejected){
+        // 1.已在排队或执行中，去重
+        RebuildTask created = new RebuildTask(key, task, hotKeyDetector.estimate(key), sequence.incrementAndGet());
+        if (pending.putIfAbsent(key, created) != null) {
+            onRejected.run();
+            return true;
+        }
+        // 2.队列已满或已关闭，拒绝
+        if (queued.incrementAndGet() > queueCapacity || executor.isShutdown()) {
+            queued.decrementAndGet();
+            pending.remove(key, created);
+            metrics.rebuildDropped("rejected");
+            log.warn("缓存重建队列已满，继续使用旧数据, key: {}", key);
+            onRejected.run();
+            return false;
+        }
+        executor.execute(created);
+        return true;
+    }
+
+    @PreDestroy
+    public void destroy(){
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+                log.warn("缓存重建任务未在{}秒内完成，强制关闭", shutdownTimeoutSeconds);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        } finally {
+            watchdog.shutdownNow();
+        }
+    }
+
+    private class RebuildTask implements Runnable, Comparable<RebuildTask> {
+
+        private final String key;
+        private final Runnable task;
+        private final long hotness;
+        private final long seq;
+        // 已执行完，看门狗不再中断
+        private boolean finished;
+
+        RebuildTask(String key, Runnable task, long hotness, long seq) {
+            this.key = key;
+            this.task = task;
+            this.hotness = hotness;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            queued.decrementAndGet();
+            // 超时中断执行线程（JDBC调用未必响应中断，重建锁的过期时间是最终兜底）
+            Thread worker = Thread.currentThread();
+            ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+                synchronized (this) {
+                    if (finished) {
+                        return;
+                    }
+                    metrics.rebuildDropped("timeout");
+                    log.warn("缓存重建超时, key: {}", key);
+                    worker.interrupt();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("缓存重建失败, key: {}", key, e);
+            } finally {
+                timeout.cancel(false);
+                synchronized (this) {
+                    finished = true;
+                }
+                // 清除超时设置的中断标记，避免影响线程池的下一个任务
+                Thread.interrupted();
+                pending.remove(key, this);
+            }
+        }
+
+        @Override
+        public int compareTo(RebuildTask other) {
+            // 热度高的在前，热度相同先提交的在前
+            int result = Long.compare(other.hotness, hotness);
+            return result != 0 ? result : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.hmdp.utils;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于Redis位图的可扩容布隆过滤器，多个节点共享
+ * 第i层容量为 expectedInsertions * 2^i，误判率为 fpp * 0.5^i，当前层写满后自动追加一层，
+ * 查询时检查所有层，总误判率不超过 2 * fpp
+ */
+public class RedisBloomFilter {
+
+    private static final DefaultRedisScript<List> ADD_SCRIPT;
+    static {
+        ADD_SCRIPT = new DefaultRedisScript<>();
+        ADD_SCRIPT.setLocation(new ClassPathResource("bloom_add.lua"));
+        ADD_SCRIPT.setResultType(List.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String keyPrefix;
+    private final String metaKey;
+    private final long expectedInsertions;
+    private final double fpp;
+
+    // 本地缓存的层数，写入时和refresh时校正，查询时不再读取Redis
+    private volatile int layers = 1;
+
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String name,
+                            long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.keyPrefix = "bf:" + name + ":";
+        this.metaKey = keyPrefix + "meta";
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+    }
+
+    /**
+     * 添加元素
+     * @param value
+     * @return 层数是否发生变化（扩容），变化时调用方应通知其他节点刷新
+     */
+    public boolean add(String value) {
+        return addAll(Collections.singletonList(value));
+    }
+
+    /**
+     * 批量添加，每次脚本调用写入一批元素；当前层在批次中途写满时，剩余的元素写入新的一层
+     * @param values
+     * @return 层数是否发生变化（扩容），变化时调用方应通知其他节点刷新
+     */
+    @SuppressWarnings("unchecked")
+    public boolean addAll(List<String> values) {
+        int before = layers;
+        int from = 0;
+        while (from < values.size()) {
+            int layer = layers - 1;
+            int k = hashCount(layer);
+            List<String> args = new ArrayList<>((values.size() - from) * k + 3);
+            args.add(String.valueOf(layer));
+            args.add(String.valueOf(capacity(layer)));
+            args.add(String.valueOf(k));
+            for (int i = from; i < values.size(); i++) {
+                for (long offset : offsets(values.get(i), layer)) {
+                    args.add(String.valueOf(offset));
+                }
+            }
+            List<Long> result = stringRedisTemplate.execute(ADD_SCRIPT, Arrays.asList(bitsKey(layer), metaKey), args.toArray());
+            if (result == null || result.size() < 2) {
+                break;
+            }
+            long added = result.get(0);
+            if (added < 0) {
+                // 本地层数已过期（其他节点扩容或清空），校正后重试
+                layers = (int) -added;
+                continue;
+            }
+            from += (int) added;
+            if (result.get(1) >= capacity(layer)) {
+                layers = layer + 2;
+            }
+        }
+        return layers != before;
+    }
+
+    /**
+     * 判断元素是否可能存在，一次pipeline读取本地已知的所有层
+     * 其他节点扩容后，新层在本节点refresh之前不会被检查
+     * @param value
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String value) {
+        int known = layers;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int layer = 0; layer < known; layer++) {
+                byte[] key = bytes(bitsKey(layer));
+                for (long offset : offsets(value, layer)) {
+                    connection.stringCommands().getBit(key, offset);
+                }
+            }
+            return null;
+        });
+        int index = 0;
+        for (int layer = 0; layer < known; layer++) {
+            boolean all = true;
+            for (int i = 0; i < hashCount(layer); i++) {
+                all &= Boolean.TRUE.equals(results.get(index++));
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一次读取层数和指定的元数据字段，校正本地层数
+     * @param fields 额外读取的元数据字段
+     * @return 各字段的值，不存在时为null
+     */
+    public List<String> refresh(String... fields) {
+        List<Object> keys = new ArrayList<>(fields.length + 1);
+        keys.add("layers");
+        keys.addAll(Arrays.asList(fields));
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(metaKey, keys);
+        Object remote = values.get(0);
+        layers = remote == null ? 1 : Integer.parseInt(remote.toString());
+        List<String> result = new ArrayList<>(fields.length);
+        for (int i = 1; i < values.size(); i++) {
+            Object value = values.get(i);
+            result.add(value == null ? null : value.toString());
+        }
+        return result;
+    }
+
+    /**
+     * 清空所有层
+     */
+    public void clear() {
+        List<String> keys = new ArrayList<>();
+        for (int layer = 0; layer < Math.max(layers, readLayers()); layer++) {
+            keys.add(bitsKey(layer));
+        }
+        keys.add(metaKey);
+        stringRedisTemplate.delete(keys);
+        layers = 1;
+    }
+
+    public String getMeta(String field) {
+        Object value = stringRedisTemplate.opsForHash().get(metaKey, field);
+        return value == null ? null : value.toString();
+    }
+
+    public void setMeta(String field, String value) {
+        stringRedisTemplate.opsForHash().put(metaKey, field, value);
+    }
+
+    private int readLayers() {
+        String value = getMeta("layers");
+        return value == null ? 1 : Integer.parseInt(value);
+    }
+
+    private String bitsKey(int layer) {
+        return keyPrefix + layer;
+    }
+
+    private long capacity(int layer) {
+        return expectedInsertions << layer;
+    }
+
+    // 位图大小 m = -n * ln(p) / (ln2)^2
+    private long bitSize(int layer) {
+        double p = fpp * Math.pow(0.5, layer);
+        return (long) Math.ceil(-capacity(layer) * Math.log(p) / (Math.log(2) * Math.log(2)));
+    }
+
+    // 哈希函数个数 k = m / n * ln2
+    private int hashCount(int layer) {
+        return Math.max(1, (int) Math.round((double) bitSize(layer) / capacity(layer) * Math.log(2)));
+    }
+
+    // 双重哈希：offset_i = (h1 + i * h2) mod m
+    private long[] offsets(String value, int layer) {
+        HashCode hash = Hashing.murmur3_128().hashString(value, StandardCharsets.UTF_8);
+        byte[] b = hash.asBytes();
+        long h1 = longOf(b, 0);
+        long h2 = longOf(b, 8);
+        long m = bitSize(layer);
+        int k = hashCount(layer);
+        long[] offsets = new long[k];
+        long combined = h1;
+        for (int i = 0; i < k; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % m;
+            combined += h2;
+        }
+        return offsets;
+    }
+
+    private static long longOf(byte[] b, int from) {
+        long value = 0;
+        for (int i = from + 7; i >= from; i--) {
+            value = (value << 8) | (b[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
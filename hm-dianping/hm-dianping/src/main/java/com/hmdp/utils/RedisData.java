@@ -2,12 +2,20 @@ package com.hmdp.utils;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
 
 @Data
+@NoArgsConstructor
 @AllArgsConstructor
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    // 上次重建耗时（毫秒），用于提前刷新
+    private Long delta;
+
+    public RedisData(LocalDateTime expireTime, Object data) {
+        this(expireTime, data, null);
+    }
 }
@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ZipUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hmdp.dto.Result;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 响应缓存
+ * 缓存最终的 Result JSON 字节、内容哈希（ETag）和可选的gzip版本，命中时控制器直接写出字节，
+ * 不需要反序列化实体、也不需要再次序列化。本地一份，Redis一份（hash：body、gzip、etag）。
+ * 失效走CacheClient.delete/deleteBatch的广播
+ */
+@Component
+public class ResponseCache {
+
+    private static final byte[] FIELD_BODY = "body".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_GZIP = "gzip".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FIELD_ETAG = "etag".getBytes(StandardCharsets.UTF_8);
+
+    @Value("${hmdp.response-cache.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.response-cache.maximum-size:10000}")
+    private long maximumSize;
+    @Value("${hmdp.response-cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+    // 超过该大小才保存gzip版本，小响应压缩收益不如开销
+    @Value("${hmdp.response-cache.gzip-min-bytes:512}")
+    private int gzipMinBytes;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private Cache<String, Entry> local;
+
+    @PostConstruct
+    public void init(){
+        local = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(localTtlSeconds, TimeUnit.SECONDS)
+                .build();
+        // 与CacheClient共用失效广播
+        listenerContainer.addMessageListener((message, pattern) -> {
+            for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+                local.invalidate(key);
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * 查询响应缓存，未命中时调用loader生成并缓存；只缓存成功的响应
+     * @param key 缓存key
+     * @param loader 生成响应
+     * @param time Redis过期时间
+     * @param unit 时间单位
+     * @return
+     */
+    public Entry get(String key, Supplier<Result> loader, Long time, TimeUnit unit){
+        // 1.查本地
+        Entry entry = local.getIfPresent(key);
+        if (entry != null) {
+            return entry;
+        }
+        // 2.查Redis
+        entry = getRemote(key);
+        if (entry != null) {
+            local.put(key, entry);
+            return entry;
+        }
+        // 3.未命中，生成响应并序列化
+        Result result = loader.get();
+        entry = toEntry(result);
+        if (!Boolean.TRUE.equals(result.getSuccess())) {
+            return entry;
+        }
+        // 4.写入Redis和本地
+        setRemote(key, entry, unit.toSeconds(time));
+        local.put(key, entry);
+        return entry;
+    }
+
+    private Entry toEntry(Result result){
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(result);
+            byte[] gzip = body.length >= gzipMinBytes ? ZipUtil.gzip(body) : null;
+            return new Entry(body, gzip, "\"" + DigestUtil.md5Hex(body) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("响应序列化失败", e);
+        }
+    }
+
+    private Entry getRemote(String key){
+        Map<byte[], byte[]> fields = stringRedisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(key.getBytes(StandardCharsets.UTF_8)));
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        // byte[]没有按内容比较，逐个字段匹配
+        byte[] body = null, gzip = null, etag = null;
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            String name = new String(field.getKey(), StandardCharsets.UTF_8);
+            if ("body".equals(name)) {
+                body = field.getValue();
+            } else if ("gzip".equals(name)) {
+                gzip = field.getValue();
+            } else if ("etag".equals(name)) {
+                etag = field.getValue();
+            }
+        }
+        if (body == null || etag == null) {
+            return null;
+        }
+        return new Entry(body, gzip, new String(etag, StandardCharsets.UTF_8));
+    }
+
+    private void setRemote(String key, Entry entry, long ttlSeconds){
+        Map<byte[], byte[]> fields = new HashMap<>(4);
+        fields.put(FIELD_BODY, entry.getBody());
+        fields.put(FIELD_ETAG, entry.getEtag().getBytes(StandardCharsets.UTF_8));
+        if (entry.getGzip() != null) {
+            fields.put(FIELD_GZIP, entry.getGzip());
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hashCommands().hMSet(rawKey, fields);
+            connection.keyCommands().expire(rawKey, ttlSeconds);
+            return null;
+        });
+    }
+
+    /**
+     * 缓存的响应，内容不可修改
+     */
+    public static final class Entry {
+        private final byte[] body;
+        private final byte[] gzip;
+        private final String etag;
+
+        private Entry(byte[] body, byte[] gzip, String etag) {
+            this.body = body;
+            this.gzip = gzip;
+            this.etag = etag;
+        }
+
+        // Result的JSON字节
+        public byte[] getBody() {
+            return body;
+        }
+
+        // gzip压缩后的字节，响应较小时为null
+        public byte[] getGzip() {
+            return gzip;
+        }
+
+        // 强ETag，body的MD5
+        public String getEtag() {
+            return etag;
+        }
+
+        // gzip版本的强ETag：不同编码的字节不同，不能共用同一个强ETag
+        public String getGzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_CHANGED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_BLOOM_SHOP_KEY;
+
+/**
+ * 店铺布隆过滤器，解决缓存穿透
+ * 过滤器保存在Redis中由所有节点共享，新增店铺时增量写入；
+ * 首次启动或手动重建时在后台按id游标分批扫描tb_shop，每批一次脚本调用写入，重建完成前放行所有请求；
+ * 重建失败或重建的节点宕机时，各节点定时刷新发现未就绪且锁已释放，会重新发起重建。
+ * 是否就绪和层数缓存在本地，定时刷新，重建或扩容时广播通知立即刷新，查询时只有一次GETBIT的pipeline
+ */
+@Slf4j
+@Component
+public class ShopBloomFilter {
+
+    private static final String READY = "ready";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.bloom.shop.expected-insertions:100000}")
+    private long expectedInsertions;
+    @Value("${hmdp.bloom.shop.fpp:0.01}")
+    private double fpp;
+    @Value("${hmdp.bloom.shop.refresh-interval-ms:5000}")
+    private long refreshIntervalMs;
+
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    private RedisBloomFilter bloomFilter;
+    // 本地缓存的就绪标记
+    private volatile boolean ready;
+    // 本节点是否有重建任务在排队或执行，避免定时刷新重复提交
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private ScheduledExecutorService scheduler;
+
+    private static final ExecutorService BLOOM_REBUILD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @PostConstruct
+    public void init(){
+        bloomFilter = new RedisBloomFilter(stringRedisTemplate, "shop", expectedInsertions, fpp);
+        refresh();
+        // 其他节点重建完成或扩容后立即刷新，定时刷新兜底丢失的通知
+        listenerContainer.addMessageListener((message, pattern) -> refreshQuietly(),
+                new ChannelTopic(BLOOM_SHOP_CHANGED_CHANNEL));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shop-bloom-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        // 过滤器还没建好，后台构建，不阻塞启动
+        if (!ready) {
+            BLOOM_REBUILD_EXECUTOR.submit(() -> rebuild(false));
+        }
+    }
+
+    @PreDestroy
+    public void destroy(){
+        scheduler.shutdownNow();
+    }
+
+    public boolean isReady(){
+        return ready;
+    }
+
+    // 一次读取层数和就绪标记
+    private void refresh(){
+        ready = "1".equals(bloomFilter.refresh(READY).get(0));
+    }
+
+    private void refreshQuietly(){
+        try {
+            refresh();
+            // 未就绪且没有节点在重建（上次重建失败或节点宕机，锁已释放或过期），重新发起
+            if (!ready && !rebuilding.get() && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(LOCK_BLOOM_SHOP_KEY))) {
+                BLOOM_REBUILD_EXECUTOR.submit(() -> rebuild(false));
+            }
+        } catch (Exception e) {
+            log.warn("刷新店铺布隆过滤器元数据失败", e);
+        }
+    }
+
+    // 通知所有节点（包括自己）刷新
+    private void publishChanged(){
+        stringRedisTemplate.convertAndSend(BLOOM_SHOP_CHANGED_CHANNEL, "shop");
+    }
+
+    /**
+     * 判断店铺是否可能存在
+     * @param id
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(Long id){
+        // 重建期间无法判断，放行
+        if (!ready) {
+            return true;
+        }
+        return bloomFilter.mightContain(id.toString());
+    }
+
+    /**
+     * 新增店铺时写入
+     * @param id
+     */
+    public void add(Long id){
+        if (bloomFilter.add(id.toString())) {
+            // 扩容了一层，其他节点需要检查新层
+            publishChanged();
+        }
+    }
+
+    /**
+     * 后台重建，清除已删除店铺留下的位
+     */
+    public void rebuildAsync(){
+        BLOOM_REBUILD_EXECUTOR.submit(() -> rebuild(true));
+    }
+
+    private void rebuild(boolean force){
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildLocked(force);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuildLocked(boolean force){
+        // 1.集群内只有一个节点重建，锁的值为本次重建的标识，释放时比较，避免删除其他节点的锁
+        String token = UUID.randomUUID().toString(true);
+        Boolean isLock = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_BLOOM_SHOP_KEY, token, 10, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(isLock)) {
+            return;
+        }
+        try {
+            refresh();
+            if (!force && ready) {
+                return;
+            }
+            // 2.清空旧数据，重建期间放行
+            bloomFilter.clear();
+            bloomFilter.setMeta(READY, "0");
+            publishChanged();
+            // 3.按id游标分批扫描，不一次性加载整张表
+            long lastId = 0;
+            long count = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id").gt("id", lastId).orderByAsc("id")
+                        .last("LIMIT " + REBUILD_BATCH_SIZE));
+                // 一批一次脚本调用，不再每家店铺一次往返
+                bloomFilter.addAll(shops.stream().map(shop -> shop.getId().toString()).collect(Collectors.toList()));
+                count += shops.size();
+                if (shops.size() < REBUILD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            // 4.重建完成
+            bloomFilter.setMeta(READY, "1");
+            publishChanged();
+            log.info("店铺布隆过滤器重建完成，共{}条", count);
+        } catch (Exception e) {
+            log.error("店铺布隆过滤器重建失败", e);
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_BLOOM_SHOP_KEY), token);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 店铺缓存和GEO预热
+ * 按id区间把tb_shop切成多段，多个线程并行读取，每段用pipeline批量写入店铺缓存和GEOADD；
+ * 启动时在ApplicationRunner中只同步预热热点店铺（按销量、评分取前hot-size家），应用随后进入就绪（readiness）状态，
+ * 全表在后台继续预热，启动时间不随表的大小增长
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.warmup.enabled:false}")
+    private boolean enabled;
+    @Value("${hmdp.warmup.threads:4}")
+    private int threads;
+    @Value("${hmdp.warmup.chunk-size:500}")
+    private int chunkSize;
+    @Value("${hmdp.warmup.hot-size:1000}")
+    private int hotSize;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // 预热进度
+    private volatile String state = "IDLE";
+    private volatile long total;
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong chunksDone = new AtomicLong();
+    private volatile long chunks;
+    private volatile long beginTime;
+    private volatile long endTime;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            // 启动阶段只同步预热热点店铺，全表在后台继续
+            warmHot();
+            warmUpAsync();
+        }
+    }
+
+    /**
+     * 同步预热热点店铺：按销量、评分取前hotSize家
+     */
+    public void warmHot() {
+        long begin = System.currentTimeMillis();
+        try {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .orderByDesc("sold", "score")
+                    .last("LIMIT " + hotSize));
+            write(shops);
+            log.info("热点店铺预热完成：{}条，耗时{}ms", shops.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            // 预热失败不影响启动，查询时按缓存未命中处理
+            log.error("热点店铺预热失败", e);
+        }
+    }
+
+    /**
+     * 异步预热，供管理接口调用
+     * @return 是否启动成功，已有预热在执行时返回false
+     */
+    public boolean warmUpAsync() {
+        if (running.get()) {
+            return false;
+        }
+        CompletableFuture.runAsync(this::warmUp);
+        return true;
+    }
+
+    /**
+     * 同步预热
+     */
+    public void warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            state = "RUNNING";
+            loaded.set(0);
+            chunksDone.set(0);
+            beginTime = System.currentTimeMillis();
+            endTime = 0;
+            // 1.查询id范围，切分区间
+            List<Map<String, Object>> range = shopMapper.selectMaps(new QueryWrapper<Shop>()
+                    .select("MIN(id) AS minId", "MAX(id) AS maxId", "COUNT(*) AS total"));
+            Map<String, Object> row = range.isEmpty() ? null : range.get(0);
+            if (row == null || row.get("minId") == null) {
+                state = "DONE";
+                return;
+            }
+            long minId = ((Number) row.get("minId")).longValue();
+            long maxId = ((Number) row.get("maxId")).longValue();
+            total = ((Number) row.get("total")).longValue();
+            chunks = (maxId - minId) / chunkSize + 1;
+            // 2.各区间并行加载
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (long start = minId; start <= maxId; start += chunkSize) {
+                long from = start;
+                long to = Math.min(start + chunkSize - 1, maxId);
+                futures.add(CompletableFuture.runAsync(() -> loadChunk(from, to), workers));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            state = "DONE";
+            log.info("店铺缓存预热完成：{}条，耗时{}ms", loaded.get(), System.currentTimeMillis() - beginTime);
+        } catch (Exception e) {
+            state = "FAILED";
+            log.error("店铺缓存预热失败", e);
+        } finally {
+            endTime = System.currentTimeMillis();
+            workers.shutdown();
+            running.set(false);
+        }
+    }
+
+    private void loadChunk(long from, long to) {
+        // 1.读取区间内的店铺
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>().between("id", from, to));
+        write(shops);
+        loaded.addAndGet(shops.size());
+        chunksDone.incrementAndGet();
+    }
+
+    private void write(List<Shop> shops) {
+        if (!shops.isEmpty()) {
+            // 2.pipeline写入店铺缓存
+            Map<String, Shop> values = new HashMap<>(shops.size());
+            for (Shop shop : shops) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            // 3.按类型分组，pipeline写入GEO，没有类型或坐标的店铺不进GEO
+            Map<Long, Map<byte[], Point>> geo = new HashMap<>();
+            for (Shop shop : shops) {
+                if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                    continue;
+                }
+                geo.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                        .put(shop.getId().toString().getBytes(StandardCharsets.UTF_8), new Point(shop.getX(), shop.getY()));
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<Long, Map<byte[], Point>> entry : geo.entrySet()) {
+                    connection.geoCommands().geoAdd(
+                            (SHOP_GEO_KEY + entry.getKey()).getBytes(StandardCharsets.UTF_8), entry.getValue());
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 预热进度和吞吐量
+     * @return
+     */
+    public Map<String, Object> progress() {
+        long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+        long elapsed = beginTime == 0 ? 0 : end - beginTime;
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("state", state);
+        progress.put("total", total);
+        progress.put("loaded", loaded.get());
+        progress.put("chunks", chunks);
+        progress.put("chunksDone", chunksDone.get());
+        progress.put("elapsedMs", elapsed);
+        progress.put("shopsPerSecond", elapsed == 0 ? 0 : loaded.get() * 1000 / elapsed);
+        return progress;
+    }
+}
@@ -0,0 +1,311 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.pinyin.PinyinUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 店铺搜索引擎
+ * 在内存中对 name、area、address 建立倒排索引（单字 + 相邻两字），店铺名另外按拼音首字母建立索引，
+ * 查询时从最短的倒排表开始求交集，再按相关度排序，用 (相关度, id) 做游标分页，查询耗时只与命中数有关。
+ * 启动时后台按id游标分批加载，新增、修改店铺时增量更新
+ */
+@Slf4j
+@Component
+public class ShopSearchEngine {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    // 拼音首字母的token前缀，与原文token区分
+    private static final String PINYIN_PREFIX = "#";
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.search.enabled:true}")
+    private boolean enabled;
+
+    // token -> 店铺id
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+    // 店铺id -> 参与搜索的字段
+    private final Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private static final ExecutorService SEARCH_LOAD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    @PostConstruct
+    public void init(){
+        if (enabled) {
+            SEARCH_LOAD_EXECUTOR.submit(this::load);
+        }
+    }
+
+    /**
+     * 索引加载完成前由调用方走数据库查询
+     * @return
+     */
+    public boolean isReady(){
+        return ready;
+    }
+
+    /**
+     * 新增或更新店铺的索引
+     * @param shop
+     */
+    public void index(Shop shop){
+        if (shop == null || shop.getId() == null) {
+            return;
+        }
+        Doc doc = new Doc(shop);
+        Doc old = docs.put(shop.getId(), doc);
+        if (old != null) {
+            // 只移除不再出现的token
+            Set<String> stale = old.tokens();
+            stale.removeAll(doc.tokens());
+            unlink(shop.getId(), stale);
+        }
+        for (String token : doc.tokens()) {
+            // 在compute内添加，避免与unlink并发时加到已被移除的集合里
+            postings.compute(token, (k, ids) -> {
+                Set<Long> set = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+                set.add(shop.getId());
+                return set;
+            });
+        }
+    }
+
+    /**
+     * 删除店铺的索引
+     * @param id
+     */
+    public void remove(Long id){
+        Doc old = docs.remove(id);
+        if (old != null) {
+            unlink(id, old.tokens());
+        }
+    }
+
+    /**
+     * 搜索
+     * @param query 关键字
+     * @param after 上一页最后一条的 (相关度, id)，第一页为null
+     * @param skip 跳过的条数（兼容按页码查询）
+     * @param limit 返回条数
+     * @return 按相关度从高到低排列
+     */
+    public List<Hit> search(String query, Hit after, int skip, int limit){
+        String q = normalize(query);
+        if (q.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.候选：原文token的交集，关键字全是字母时再加上拼音首字母的交集
+        Set<Long> candidates = intersect(tokenize(q, ""));
+        boolean letters = q.chars().allMatch(c -> c >= 'a' && c <= 'z');
+        if (letters) {
+            Set<Long> byPinyin = intersect(tokenize(q, PINYIN_PREFIX));
+            if (!byPinyin.isEmpty()) {
+                candidates = new HashSet<>(candidates);
+                candidates.addAll(byPinyin);
+            }
+        }
+        // 2.计算相关度，只保留排在游标之后的前 skip + limit 条
+        int size = skip + limit;
+        PriorityQueue<Hit> top = new PriorityQueue<>(size + 1, Comparator.reverseOrder());
+        for (Long id : candidates) {
+            Doc doc = docs.get(id);
+            int relevance = doc == null ? 0 : doc.relevance(q, letters);
+            if (relevance <= 0) {
+                // 交集只保证包含每个token，不保证连续出现
+                continue;
+            }
+            Hit hit = new Hit(id, relevance);
+            if (after != null && hit.compareTo(after) <= 0) {
+                continue;
+            }
+            top.offer(hit);
+            if (top.size() > size) {
+                top.poll();
+            }
+        }
+        // 3.排序后跳过前skip条
+        List<Hit> hits = new ArrayList<>(top);
+        Collections.sort(hits);
+        return hits.size() <= skip ? Collections.emptyList() : hits.subList(skip, hits.size());
+    }
+
+    private Set<Long> intersect(List<String> tokens){
+        List<Set<Long>> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Set<Long> ids = postings.get(token);
+            if (ids == null || ids.isEmpty()) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        if (lists.isEmpty()) {
+            return Collections.emptySet();
+        }
+        // 从最短的倒排表开始，逐个过滤
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>();
+        for (Long id : lists.get(0)) {
+            boolean all = true;
+            for (int i = 1; i < lists.size() && all; i++) {
+                all = lists.get(i).contains(id);
+            }
+            if (all) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private void unlink(Long id, Set<String> tokens){
+        for (String token : tokens) {
+            postings.computeIfPresent(token, (k, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    private void load(){
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "name", "area", "address", "score")
+                        .gt("id", lastId).orderByAsc("id")
+                        .last("LIMIT " + LOAD_BATCH_SIZE));
+                shops.forEach(this::index);
+                if (shops.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            ready = true;
+            log.info("店铺搜索索引加载完成，共{}家店铺，{}个token", docs.size(), postings.size());
+        } catch (Exception e) {
+            log.error("店铺搜索索引加载失败", e);
+        }
+    }
+
+    // 去掉空白，转小写
+    private static String normalize(String text){
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    // 一个字时为单字，否则为相邻两字
+    private static List<String> tokenize(String q, String prefix){
+        List<String> tokens = new ArrayList<>();
+        if (q.length() == 1) {
+            tokens.add(prefix + q);
+            return tokens;
+        }
+        for (int i = 0; i + 1 < q.length(); i++) {
+            tokens.add(prefix + q.substring(i, i + 2));
+        }
+        return tokens;
+    }
+
+    // 建索引时单字和相邻两字都要
+    private static void collect(String text, String prefix, Set<String> tokens){
+        for (int i = 0; i < text.length(); i++) {
+            tokens.add(prefix + text.charAt(i));
+            if (i + 1 < text.length()) {
+                tokens.add(prefix + text.substring(i, i + 2));
+            }
+        }
+    }
+
+    /**
+     * 参与搜索的字段，已规范化
+     */
+    private static class Doc {
+        private final String name;
+        private final String area;
+        private final String address;
+        // 店铺名的拼音首字母
+        private final String initials;
+        private final int score;
+
+        Doc(Shop shop) {
+            this.name = normalize(shop.getName());
+            this.area = normalize(shop.getArea());
+            this.address = normalize(shop.getAddress());
+            this.initials = name.isEmpty() ? "" : normalize(PinyinUtil.getFirstLetter(name, ""));
+            this.score = shop.getScore() == null ? 0 : shop.getScore();
+        }
+
+        Set<String> tokens(){
+            Set<String> tokens = new HashSet<>();
+            collect(name, "", tokens);
+            collect(area, "", tokens);
+            collect(address, "", tokens);
+            collect(initials, PINYIN_PREFIX, tokens);
+            return tokens;
+        }
+
+        // 相关度：店铺名 > 拼音首字母 > 商圈 > 地址，前缀、完全匹配加分，评分作为同等匹配时的次要因素
+        int relevance(String q, boolean letters){
+            int relevance = 0;
+            if (name.contains(q)) {
+                relevance += 100;
+                if (name.startsWith(q)) {
+                    relevance += 50;
+                }
+                if (name.equals(q)) {
+                    relevance += 30;
+                }
+            } else if (letters && initials.contains(q)) {
+                relevance += initials.startsWith(q) ? 80 : 60;
+            }
+            if (area.contains(q)) {
+                relevance += 40;
+            }
+            if (address.contains(q)) {
+                relevance += 20;
+            }
+            // 评分 0~50
+            return relevance == 0 ? 0 : relevance + score / 5;
+        }
+    }
+
+    /**
+     * 搜索结果：按相关度从高到低、id从小到大排序
+     */
+    public static final class Hit implements Comparable<Hit> {
+        private final long id;
+        private final int relevance;
+
+        public Hit(long id, int relevance) {
+            this.id = id;
+            this.relevance = relevance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getRelevance() {
+            return relevance;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            int result = Integer.compare(other.relevance, relevance);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.Data;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 店铺空间索引（进程内网格）
+ * 按类型、经纬度把店铺划分到固定大小的网格中，查询时从所在网格向外一圈一圈扩展，
+ * 已找到的第k个结果比下一圈的最近距离还近时停止，支持按类型、均价、评分过滤。
+ * 启动时后台从tb_shop加载，新增、修改店铺时增量更新；加载完成前调用方走Redis GEO
+ */
+@Slf4j
+@Component
+public class ShopSpatialIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    // 与Redis GEO相同的地球半径，距离结果与GEOSEARCH一致
+    static final double EARTH_RADIUS_METERS = 6372797.560856;
+    private static final double METERS_PER_DEGREE_LAT = Math.PI * EARTH_RADIUS_METERS / 180;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.spatial.enabled:false}")
+    private boolean enabled;
+
+    // 网格边长（度）
+    private final double cellDegrees;
+    // 类型 -> 网格 -> 店铺，按类型查询时只扫描该类型的网格
+    private final Map<Long, Map<Long, Map<Long, Entry>>> grids = new ConcurrentHashMap<>();
+    // 店铺id -> 坐标和过滤字段
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private static final ExecutorService SPATIAL_LOAD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    public ShopSpatialIndex(@Value("${hmdp.spatial.cell-degrees:0.01}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    @PostConstruct
+    public void init(){
+        if (enabled) {
+            SPATIAL_LOAD_EXECUTOR.submit(this::load);
+        }
+    }
+
+    public boolean isReady(){
+        return ready;
+    }
+
+    /**
+     * 新增或更新店铺，坐标为空时移除
+     * @param shop
+     */
+    public void index(Shop shop){
+        if (shop == null || shop.getId() == null) {
+            return;
+        }
+        if (shop.getX() == null || shop.getY() == null) {
+            remove(shop.getId());
+            return;
+        }
+        Entry entry = new Entry(shop.getId(), shop.getX(), shop.getY(),
+                shop.getTypeId(), shop.getAvgPrice(), shop.getScore());
+        // 替换、移出旧网格、加入新网格在同一个id的compute中完成，同一家店铺并发更新时不会在网格中留下两份
+        entries.compute(entry.id, (id, old) -> {
+            if (old != null) {
+                unlink(old);
+            }
+            link(entry);
+            return entry;
+        });
+    }
+
+    public void remove(Long id){
+        entries.computeIfPresent(id, (k, old) -> {
+            unlink(old);
+            return null;
+        });
+    }
+
+    /**
+     * 查询半径内、排在游标之后最近的limit家店铺
+     * @param x 经度
+     * @param y 纬度
+     * @param radius 半径（米）
+     * @param filter 过滤条件，可为null
+     * @param afterDistance 游标：上一页最后一条的距离，第一页传负数
+     * @param afterId 游标：上一页最后一条的id
+     * @param limit 条数
+     * @return 按 (距离, id) 升序
+     */
+    public List<Hit> nearest(double x, double y, double radius, Filter filter,
+                             double afterDistance, long afterId, int limit){
+        // 指定了类型只扫描该类型的网格
+        Collection<Map<Long, Map<Long, Entry>>> targets;
+        if (filter != null && filter.getTypeId() != null) {
+            Map<Long, Map<Long, Entry>> grid = grids.get(filter.getTypeId());
+            targets = grid == null ? Collections.emptyList() : Collections.singletonList(grid);
+        } else {
+            targets = grids.values();
+        }
+        // 当前找到的最近limit个，堆顶是其中最远的
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, Comparator.reverseOrder());
+        long cx = (long) Math.floor(x / cellDegrees);
+        long cy = (long) Math.floor(y / cellDegrees);
+        // 一格对应的最短距离（经度方向随纬度缩短，按半径内纬度最高处计算）
+        double maxLat = Math.min(Math.abs(y) + radius / METERS_PER_DEGREE_LAT + cellDegrees, 89.0);
+        double cellMeters = cellDegrees * METERS_PER_DEGREE_LAT * Math.max(Math.cos(Math.toRadians(maxLat)), 0.01);
+        long maxRing = (long) Math.ceil(radius / cellMeters) + 1;
+        for (long ring = 0; ring <= maxRing; ring++) {
+            // 1.扫描第ring圈的网格
+            for (long i = cx - ring; i <= cx + ring; i++) {
+                for (long j = cy - ring; j <= cy + ring; j++) {
+                    if (Math.abs(i - cx) != ring && Math.abs(j - cy) != ring) {
+                        continue;
+                    }
+                    for (Map<Long, Map<Long, Entry>> grid : targets) {
+                        Map<Long, Entry> cell = grid.get(key(i, j));
+                        if (cell != null) {
+                            collect(cell.values(), x, y, radius, filter, afterDistance, afterId, limit, top);
+                        }
+                    }
+                }
+            }
+            // 2.第ring圈之外的店铺至少相距 ring * cellMeters，已找满且都更近时停止
+            if (top.size() == limit && top.peek().getDistance() <= ring * cellMeters) {
+                break;
+            }
+        }
+        List<Hit> hits = new ArrayList<>(top);
+        Collections.sort(hits);
+        return hits;
+    }
+
+    private static void collect(Collection<Entry> cell, double x, double y, double radius, Filter filter,
+                                double afterDistance, long afterId, int limit, PriorityQueue<Hit> top){
+        for (Entry entry : cell) {
+            if (filter != null && !filter.test(entry)) {
+                continue;
+            }
+            double distance = distance(x, y, entry.x, entry.y);
+            if (distance > radius
+                    || distance < afterDistance || (distance == afterDistance && entry.id <= afterId)) {
+                continue;
+            }
+            // 已找满且比堆顶还远，直接跳过
+            if (top.size() == limit && distance > top.peek().getDistance()) {
+                continue;
+            }
+            top.offer(new Hit(entry.id, distance));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+    }
+
+    private void link(Entry entry){
+        grids.computeIfAbsent(typeOf(entry.typeId), k -> new ConcurrentHashMap<>())
+                .compute(cellOf(entry.x, entry.y), (k, cell) -> {
+                    Map<Long, Entry> map = cell == null ? new ConcurrentHashMap<>() : cell;
+                    map.put(entry.id, entry);
+                    return map;
+                });
+    }
+
+    private void unlink(Entry old){
+        Map<Long, Map<Long, Entry>> grid = grids.get(typeOf(old.typeId));
+        if (grid == null) {
+            return;
+        }
+        grid.computeIfPresent(cellOf(old.x, old.y), (k, cell) -> {
+            // 只移除旧对象，不影响已写入的新对象
+            cell.remove(old.id, old);
+            return cell.isEmpty() ? null : cell;
+        });
+    }
+
+    // 没有类型的店铺归到-1
+    private static long typeOf(Long typeId){
+        return typeId == null ? -1L : typeId;
+    }
+
+    private long cellOf(double x, double y){
+        return key((long) Math.floor(x / cellDegrees), (long) Math.floor(y / cellDegrees));
+    }
+
+    // 经度、纬度方向的网格编号各占32位
+    private static long key(long i, long j){
+        return (i << 32) ^ (j & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 球面距离（米），与Redis GEODIST的算法一致，保留4位小数（与GEOSEARCH WITHDIST相同）。
+     * 游标中的距离就是这个值，比较时两边精度相同，距离相同的店铺不会被跳过或重复返回
+     */
+    static double distance(double x1, double y1, double x2, double y2){
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        double meters = 2.0 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+        return Math.round(meters * 10000) / 10000.0;
+    }
+
+    private void load(){
+        try {
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .select("id", "type_id", "x", "y", "avg_price", "score")
+                        .gt("id", lastId).orderByAsc("id")
+                        .last("LIMIT " + LOAD_BATCH_SIZE));
+                shops.forEach(this::index);
+                if (shops.size() < LOAD_BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            ready = true;
+            log.info("店铺空间索引加载完成，共{}家店铺，{}种类型", entries.size(), grids.size());
+        } catch (Exception e) {
+            log.error("店铺空间索引加载失败", e);
+        }
+    }
+
+    private static class Entry {
+        private final long id;
+        private final double x;
+        private final double y;
+        private final Long typeId;
+        private final Long avgPrice;
+        private final Integer score;
+
+        Entry(long id, double x, double y, Long typeId, Long avgPrice, Integer score) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.typeId = typeId;
+            this.avgPrice = avgPrice;
+            this.score = score;
+        }
+    }
+
+    /**
+     * 过滤条件，字段为空表示不限
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class Filter {
+        private Long typeId;
+        private Long minAvgPrice;
+        private Long maxAvgPrice;
+        // 评分，乘10保存
+        private Integer minScore;
+
+        boolean test(Entry entry){
+            if (typeId != null && !typeId.equals(entry.typeId)) {
+                return false;
+            }
+            if (minAvgPrice != null && (entry.avgPrice == null || entry.avgPrice < minAvgPrice)) {
+                return false;
+            }
+            if (maxAvgPrice != null && (entry.avgPrice == null || entry.avgPrice > maxAvgPrice)) {
+                return false;
+            }
+            return minScore == null || (entry.score != null && entry.score >= minScore);
+        }
+    }
+
+    /**
+     * 查询结果：按距离、id升序
+     */
+    public static final class Hit implements Comparable<Hit> {
+        private final long id;
+        private final double distance;
+
+        public Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            int result = Double.compare(distance, other.distance);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.hmdp.utils;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopTypeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_VERSION_KEY;
+
+/**
+ * 商铺类型目录
+ * 每个节点持有一份不可变的快照（列表、序列化好的响应体、ETag），
+ * 定期检查Redis中的版本号，版本变化时才重新加载，读取时不访问Redis、不做JSON序列化
+ */
+@Slf4j
+@Component
+public class ShopTypeCatalog {
+
+    @Value("${hmdp.shop-type.check-interval-ms:1000}")
+    private long checkIntervalMs;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init(){
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shop-type-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkQuietly, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy(){
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 获取当前快照，首次访问时加载
+     * @return
+     */
+    public Snapshot get(){
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = load(currentVersion());
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 商铺类型发生变化：删除Redis中的列表并递增版本号，各节点在下一次检查时重新加载
+     */
+    public void invalidate(){
+        cacheClient.delete(CACHE_SHOP_TYPE_KEY);
+        stringRedisTemplate.opsForValue().increment(SHOP_TYPE_VERSION_KEY);
+        checkQuietly();
+    }
+
+    // 版本号变化时重新加载
+    private void checkQuietly(){
+        try {
+            long version = currentVersion();
+            Snapshot current = snapshot;
+            if (current == null || current.getVersion() != version) {
+                synchronized (this) {
+                    snapshot = load(version);
+                }
+                log.debug("商铺类型目录已刷新，版本：{}", version);
+            }
+        } catch (Exception e) {
+            log.error("商铺类型目录刷新失败", e);
+        }
+    }
+
+    private long currentVersion(){
+        String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    // 先读版本号再读数据，期间发生的修改会在下一次检查时被发现
+    private Snapshot load(long version){
+        List<ShopType> list = shopTypeService.queryWithRedis();
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(Result.ok(list));
+            String etag = "\"" + DigestUtil.md5Hex(body) + "\"";
+            return new Snapshot(version, Collections.unmodifiableList(list), body, etag);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("商铺类型序列化失败", e);
+        }
+    }
+
+    /**
+     * 不可变快照
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final List<ShopType> list;
+        private final byte[] body;
+        private final String etag;
+
+        private Snapshot(long version, List<ShopType> list, byte[] body, String etag) {
+            this.version = version;
+            this.list = list;
+            this.body = body;
+            this.etag = etag;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<ShopType> getList() {
+            return list;
+        }
+
+        // 序列化好的 Result.ok(list)，调用方不能修改
+        public byte[] getBody() {
+            return body;
+        }
+
+        // 强ETag，内容的MD5
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
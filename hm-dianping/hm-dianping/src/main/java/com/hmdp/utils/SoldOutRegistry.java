@@ -0,0 +1,100 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄登记
+ * 某个节点执行秒杀脚本得到“库存不足”后登记售罄并广播，各节点之后的请求直接在本地拒绝，不再访问Redis；
+ * 补库存时广播清除。每条登记带有过期时间，过期后放行一次请求重新确认，避免广播丢失或乱序导致一直误判
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+
+    private static final String SOLD_OUT = "+";
+    private static final String RESTOCKED = "-";
+
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:60}")
+    private long soldOutTtlSeconds;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 优惠券id -> 登记的过期时间
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init(){
+        // 消息格式：+id 售罄，-id 补库存
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            try {
+                Long voucherId = Long.valueOf(body.substring(1));
+                if (body.startsWith(SOLD_OUT)) {
+                    soldOut.put(voucherId, expiresAt());
+                } else {
+                    soldOut.remove(voucherId);
+                }
+            } catch (RuntimeException e) {
+                log.warn("无效的售罄消息：{}", body);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 是否已售罄，只读本地，不访问Redis
+     * @param voucherId
+     * @return
+     */
+    public boolean isSoldOut(Long voucherId){
+        Long expiresAt = soldOut.get(voucherId);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, expiresAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 登记售罄并通知其他节点
+     * @param voucherId
+     */
+    public void markSoldOut(Long voucherId){
+        // 已登记的不再重复广播
+        if (soldOut.put(voucherId, expiresAt()) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + voucherId);
+        }
+    }
+
+    /**
+     * 补库存后清除售罄登记并通知其他节点
+     * @param voucherId
+     */
+    public void clear(Long voucherId){
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, RESTOCKED + voucherId);
+    }
+
+    private long expiresAt(){
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(soldOutTtlSeconds);
+    }
+}
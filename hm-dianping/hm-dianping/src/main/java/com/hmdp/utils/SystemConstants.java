@@ -5,4 +5,7 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    // 附近商铺的默认、最大搜索半径（米）
+    public static final int DEFAULT_GEO_RADIUS = 5000;
+    public static final int MAX_GEO_RADIUS = 50000;
 }
@@ -0,0 +1,35 @@
+-- 1.参数列表
+-- 1.1.当前层的位图key
+local bitsKey = KEYS[1]
+-- 1.2.元数据key
+local metaKey = KEYS[2]
+-- 1.3.层号、该层容量、每个元素的位偏移个数
+local layer = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local k = tonumber(ARGV[3])
+
+-- 2.只能写入最新的一层，调用方的层数过期时返回负的最新层数
+local layers = tonumber(redis.call('hget', metaKey, 'layers') or '1')
+if layers ~= layer + 1 then
+    return {-layers, 0}
+end
+-- 3.逐个元素设置位，ARGV[4]之后每k个是一个元素的位偏移
+local countField = 'count:' .. layer
+local count = tonumber(redis.call('hget', metaKey, countField) or '0')
+local n = (#ARGV - 3) / k
+local added = 0
+for i = 0, n - 1 do
+    for j = 1, k do
+        redis.call('setbit', bitsKey, ARGV[3 + i * k + j], 1)
+    end
+    added = added + 1
+    count = count + 1
+    -- 4.当前层已满，扩容一层，剩余的元素由调用方写入新的一层
+    if count >= capacity then
+        redis.call('hset', metaKey, 'layers', layers + 1)
+        break
+    end
+end
+redis.call('hset', metaKey, countField, count)
+-- 5.返回写入的元素个数和该层计数
+return {added, count}
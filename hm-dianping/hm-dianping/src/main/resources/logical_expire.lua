@@ -0,0 +1,23 @@
+-- 1.参数列表
+-- 1.1.缓存key（hash：data为数据，expire为逻辑过期时间戳毫秒）
+local cacheKey = KEYS[1]
+-- 1.2.重建锁key
+local lockKey = KEYS[2]
+-- 1.3.当前时间戳毫秒、锁的过期时间毫秒
+local now = tonumber(ARGV[1])
+local lockTtl = ARGV[2]
+
+-- 2.一次读出数据和过期时间，未命中返回空
+local values = redis.call('hmget', cacheKey, 'data', 'expire')
+if not values[1] then
+    return nil
+end
+-- 3.未过期，返回数据，标记0
+if tonumber(values[2]) > now then
+    return {values[1], 0}
+end
+-- 4.已过期，顺便抢重建锁：抢到标记1，没抢到标记2
+if redis.call('set', lockKey, '1', 'NX', 'PX', lockTtl) then
+    return {values[1], 1}
+end
+return {values[1], 2}
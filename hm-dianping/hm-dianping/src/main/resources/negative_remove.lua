@@ -0,0 +1,8 @@
+-- 清除空值位图中的标记，KEYS为各时间桶的位图，ARGV[1]为偏移量
+-- 只处理已存在的位图，避免SETBIT创建没有过期时间的key
+for i, key in ipairs(KEYS) do
+    if redis.call('exists', key) == 1 then
+        redis.call('setbit', key, ARGV[1], 0)
+    end
+end
+return 0
@@ -0,0 +1,26 @@
+-- 认领其他消费者长时间未确认的订单消息，并返回每条消息的投递次数
+-- KEYS[1]：订单流分区
+-- ARGV[1]：消费者组，ARGV[2]：认领到的消费者，ARGV[3]：最小空闲时间（毫秒），ARGV[4]：起始游标，ARGV[5]：最多认领条数
+-- 返回：{下一个游标, id1, 投递次数1, {字段1, 值1, ...}, id2, ...}
+
+-- 1.XAUTOCLAIM 认领空闲超过ARGV[3]毫秒的消息，同时投递次数加1
+local claimed = redis.call('xautoclaim', KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4], 'COUNT', ARGV[5])
+local result = { claimed[1] }
+for _, entry in ipairs(claimed[2]) do
+    local id = entry[1]
+    if entry[2] then
+        -- 2.查询投递次数 XPENDING key group id id 1 -> {{id, 消费者, 空闲时间, 投递次数}}
+        local pending = redis.call('xpending', KEYS[1], ARGV[1], id, id, 1)
+        local deliveries = 1
+        if pending[1] then
+            deliveries = pending[1][4]
+        end
+        table.insert(result, id)
+        table.insert(result, deliveries)
+        table.insert(result, entry[2])
+    else
+        -- 3.消息已被删除（Redis 6.2返回空的字段），直接确认
+        redis.call('xack', KEYS[1], ARGV[1], id)
+    end
+end
+return result
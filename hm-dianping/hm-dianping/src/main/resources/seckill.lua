@@ -5,14 +5,31 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3.订单id
 local orderId = ARGV[3]
+-- 1.4.订单流分区
+local partition = ARGV[4]
 
 -- 2.数据key
 -- 2.1.库存key
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2.订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 2.3.订单流key
+local streamKey = 'stream.orders:' .. partition
+-- 2.4.秒杀券信息key（begin、end：开始、结束时间的秒级时间戳）
+local voucherKey = 'seckill:voucher:' .. voucherId
 
 -- 3.脚本业务
+-- 3.0.判断是否在秒杀时间内，使用Redis服务器时间，没有时间信息的券不限制
+local window = redis.call('hmget', voucherKey, 'begin', 'end')
+local now = tonumber(redis.call('time')[1])
+if window[1] and now < tonumber(window[1]) then
+    -- 3.0.1.秒杀尚未开始，返回3
+    return 3
+end
+if window[2] and now > tonumber(window[2]) then
+    -- 3.0.2.秒杀已经结束，返回4
+    return 4
+end
 -- 3.1.判断库存是否充足 get stockKey
 if tonumber(redis.call('get', stockKey)) <= 0 then
     -- 3.1.1.库存不足，返回1
@@ -27,7 +44,7 @@ end
 redis.call('incrby', stockKey, -1)
 -- 3.5.下单（保存用户）
 redis.call('sadd', orderKey, userId)
--- 3.6.向stream.orders中添加消息
-redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+-- 3.6.向订单流的分区中添加消息
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
 --redis.call('xgroup', 'create', 'stream.orders', 'g1', '0', 'mkstream')
 return 0
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.KryoCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存编解码对比：当前JSONUtil路径 vs JSON编解码器 vs Kryo编解码器
+ * 运行：mvn test-compile 后执行本类的main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    private final CacheCodec jsonCodec = new JsonCacheCodec();
+    private final CacheCodec kryoCodec = new KryoCacheCodec();
+
+    private Shop shop;
+    private String legacyJson;
+    private String legacyLogicalJson;
+    private byte[] jsonBytes;
+    private byte[] kryoBytes;
+    private byte[] jsonLogicalBytes;
+    private byte[] kryoLogicalBytes;
+
+    @Setup
+    public void setup() {
+        shop = new Shop()
+                .setId(1L).setName("103茶餐厅").setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关").setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192).setY(30.316078).setAvgPrice(80L)
+                .setSold(4215).setComments(3035).setScore(37).setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now()).setUpdateTime(LocalDateTime.now());
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30);
+        legacyJson = JSONUtil.toJsonStr(shop);
+        legacyLogicalJson = JSONUtil.toJsonStr(new RedisData(expireTime, shop));
+        jsonBytes = jsonCodec.encode(shop);
+        kryoBytes = kryoCodec.encode(shop);
+        jsonLogicalBytes = jsonCodec.encodeWithExpire(new RedisData(expireTime, shop));
+        kryoLogicalBytes = kryoCodec.encodeWithExpire(new RedisData(expireTime, shop));
+        System.out.printf("%n编码大小: json=%d bytes, kryo=%d bytes%n",
+                legacyJson.getBytes(StandardCharsets.UTF_8).length, kryoBytes.length);
+    }
+
+    @Benchmark
+    public String legacyEncode() {
+        return JSONUtil.toJsonStr(shop);
+    }
+
+    @Benchmark
+    public Shop legacyDecode() {
+        return JSONUtil.toBean(legacyJson, Shop.class);
+    }
+
+    @Benchmark
+    public Shop legacyDecodeLogical() {
+        // CacheClient原有的逻辑过期解析：先解析RedisData，再把data转为目标类型
+        RedisData redisData = JSONUtil.toBean(legacyLogicalJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public Shop jsonDecode() {
+        return jsonCodec.decode(jsonBytes, Shop.class);
+    }
+
+    @Benchmark
+    public Object jsonDecodeLogical() {
+        return jsonCodec.decodeWithExpire(jsonLogicalBytes, Shop.class).getData();
+    }
+
+    @Benchmark
+    public byte[] kryoEncode() {
+        return kryoCodec.encode(shop);
+    }
+
+    @Benchmark
+    public Shop kryoDecode() {
+        return kryoCodec.decode(kryoBytes, Shop.class);
+    }
+
+    @Benchmark
+    public Object kryoDecodeLogical() {
+        return kryoCodec.decodeWithExpire(kryoLogicalBytes, Shop.class).getData();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.ShopSpatialIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 附近商铺查询对比：进程内网格索引 vs Redis GEOSEARCH
+ * Redis部分需要本地Redis（-p redisHost=... -p redisPort=...），不可用时只有该部分失败
+ * 运行：mvn test-compile 后执行本类的main方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    // 杭州附近约 0.3° x 0.3° 的范围
+    private static final double CENTER_X = 120.15;
+    private static final double CENTER_Y = 30.30;
+    private static final double SPAN = 0.3;
+    private static final long TYPE_ID = 1L;
+    private static final int TYPES = 10;
+    private static final String GEO_KEY = "bench:shop:geo:" + TYPE_ID;
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        @Param({"10000", "100000"})
+        public int shops;
+
+        final Random random = new Random(42);
+        ShopSpatialIndex index;
+        double[][] queries;
+        int next;
+
+        @Setup
+        public void setup() {
+            index = new ShopSpatialIndex(0.01);
+            for (long id = 1; id <= shops; id++) {
+                index.index(randomShop(random, id));
+            }
+            queries = new double[1024][];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = new double[]{CENTER_X + (random.nextDouble() - 0.5) * SPAN,
+                        CENTER_Y + (random.nextDouble() - 0.5) * SPAN};
+            }
+        }
+
+        double[] nextQuery() {
+            next = (next + 1) & (queries.length - 1);
+            return queries[next];
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class RedisState {
+        @Param({"127.0.0.1"})
+        public String redisHost;
+        @Param({"6379"})
+        public int redisPort;
+
+        LettuceConnectionFactory factory;
+        StringRedisTemplate template;
+
+        @Setup
+        public void setup(Data data) {
+            factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(redisHost, redisPort));
+            factory.afterPropertiesSet();
+            template = new StringRedisTemplate(factory);
+            template.delete(GEO_KEY);
+            // 与本地索引相同的数据，只写入该类型
+            Random random = new Random(42);
+            Map<String, Point> members = new HashMap<>();
+            for (long id = 1; id <= data.shops; id++) {
+                Shop shop = randomShop(random, id);
+                if (TYPE_ID == shop.getTypeId()) {
+                    members.put(id + "", new Point(shop.getX(), shop.getY()));
+                }
+            }
+            template.opsForGeo().add(GEO_KEY, members);
+        }
+
+        @TearDown
+        public void tearDown() {
+            template.delete(GEO_KEY);
+            factory.destroy();
+        }
+    }
+
+    private static Shop randomShop(Random random, long id) {
+        return new Shop().setId(id)
+                .setTypeId((long) random.nextInt(TYPES) + 1)
+                .setX(CENTER_X + (random.nextDouble() - 0.5) * SPAN)
+                .setY(CENTER_Y + (random.nextDouble() - 0.5) * SPAN)
+                .setAvgPrice((long) random.nextInt(300))
+                .setScore(random.nextInt(50));
+    }
+
+    @Benchmark
+    public List<ShopSpatialIndex.Hit> indexFirstPage(Data data) {
+        double[] q = data.nextQuery();
+        return data.index.nearest(q[0], q[1], 5000, new ShopSpatialIndex.Filter().setTypeId(TYPE_ID), -1, 0, 5);
+    }
+
+    @Benchmark
+    public List<ShopSpatialIndex.Hit> indexFirstPageFiltered(Data data) {
+        double[] q = data.nextQuery();
+        return data.index.nearest(q[0], q[1], 5000,
+                new ShopSpatialIndex.Filter().setTypeId(TYPE_ID).setMaxAvgPrice(100L).setMinScore(40), -1, 0, 5);
+    }
+
+    @Benchmark
+    public GeoResults<RedisGeoCommands.GeoLocation<String>> redisFirstPage(Data data, RedisState redis) {
+        double[] q = data.nextQuery();
+        return redis.template.opsForGeo().search(GEO_KEY, GeoReference.fromCoordinate(q[0], q[1]), new Distance(5000),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().limit(5));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SpatialIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
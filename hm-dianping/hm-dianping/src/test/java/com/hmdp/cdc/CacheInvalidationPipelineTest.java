@@ -0,0 +1,128 @@
+package com.hmdp.cdc;
+
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.NegativeCache;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopSearchEngine;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.ShopTypeCatalog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 缓存失效流水线：通过内存队列投递行变更事件，验证窗口内的事件合并为一次批量失效
+ */
+class CacheInvalidationPipelineTest {
+
+    private final CacheClient cacheClient = mock(CacheClient.class);
+    private final ShopBloomFilter shopBloomFilter = mock(ShopBloomFilter.class);
+    private final NegativeCache negativeCache = mock(NegativeCache.class);
+    private final ShopTypeCatalog shopTypeCatalog = mock(ShopTypeCatalog.class);
+    private final ShopSearchEngine shopSearchEngine = mock(ShopSearchEngine.class);
+    private final ShopSpatialIndex shopSpatialIndex = mock(ShopSpatialIndex.class);
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+    private final QueueRowChangeSource source = new QueueRowChangeSource();
+    private final CacheInvalidationPipeline pipeline = new CacheInvalidationPipeline();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ObjectProvider<RowChangeSource> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(source);
+        ReflectionTestUtils.setField(pipeline, "cacheClient", cacheClient);
+        ReflectionTestUtils.setField(pipeline, "shopBloomFilter", shopBloomFilter);
+        ReflectionTestUtils.setField(pipeline, "negativeCache", negativeCache);
+        ReflectionTestUtils.setField(pipeline, "shopTypeCatalog", shopTypeCatalog);
+        ReflectionTestUtils.setField(pipeline, "shopSearchEngine", shopSearchEngine);
+        ReflectionTestUtils.setField(pipeline, "shopSpatialIndex", shopSpatialIndex);
+        ReflectionTestUtils.setField(pipeline, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(pipeline, "rowChangeSource", provider);
+        // 窗口足够长，由测试手动触发flush
+        ReflectionTestUtils.setField(pipeline, "flushIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(pipeline, "maxBatchSize", 1000);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescesEventsInWindowIntoOneBatch() {
+        // 1.同一篇博客、同一家店铺多次变更，另有一家新店铺和一次类型变更
+        source.publish(event("tb_blog", RowChangeEvent.UPDATE, row(5L), row(5L)));
+        source.publish(event("tb_blog", RowChangeEvent.UPDATE, row(5L), row(5L)));
+        source.publish(event("tb_shop_type", RowChangeEvent.UPDATE, row(1L), row(1L)));
+        source.publish(event("tb_shop", RowChangeEvent.UPDATE, shop(1L, 1L), shop(1L, 1L)));
+        source.publish(event("tb_shop", RowChangeEvent.UPDATE, shop(1L, 1L), shop(1L, 1L)));
+        source.publish(event("tb_shop", RowChangeEvent.INSERT, null, shop(2L, 1L)));
+        // 事件按顺序消费，店铺事件都已处理说明前面的事件也已处理
+        verify(shopSearchEngine, timeout(5000).times(3)).index(any());
+        verify(cacheClient, never()).deleteBatch(any());
+
+        // 2.执行一次窗口
+        pipeline.flush();
+
+        // 3.所有key合并为一次批量删除
+        ArgumentCaptor<Collection<String>> keys = ArgumentCaptor.forClass(Collection.class);
+        verify(cacheClient, times(1)).deleteBatch(keys.capture());
+        assertEquals(new HashSet<>(Arrays.asList(
+                CACHE_BLOG_KEY + 5,
+                CACHE_SHOP_TYPE_KEY,
+                CACHE_SHOP_KEY + 1, CACHE_SHOP_RESPONSE_KEY + 1,
+                CACHE_SHOP_KEY + 2, CACHE_SHOP_RESPONSE_KEY + 2)), new HashSet<>(keys.getValue()));
+        // GEO变更一个pipeline，类型目录刷新一次，新店铺写入布隆过滤器并清除空值标记
+        verify(stringRedisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(shopTypeCatalog, times(1)).invalidate();
+        verify(shopBloomFilter, times(1)).add(2L);
+        verify(negativeCache, times(1)).remove(CACHE_SHOP_KEY, 2L);
+
+        // 4.窗口已清空，再次flush不做任何操作
+        pipeline.flush();
+        verifyNoMoreInteractions(cacheClient);
+    }
+
+    private static RowChangeEvent event(String table, String type, Map<String, Object> before, Map<String, Object> after) {
+        RowChangeEvent event = new RowChangeEvent();
+        event.setTable(table);
+        event.setType(type);
+        event.setBefore(before);
+        event.setAfter(after);
+        return event;
+    }
+
+    private static Map<String, Object> row(Long id) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("id", id);
+        return row;
+    }
+
+    private static Map<String, Object> shop(Long id, Long typeId) {
+        Map<String, Object> row = row(id);
+        row.put("name", "店铺" + id);
+        row.put("type_id", typeId);
+        row.put("x", 120.149192);
+        row.put("y", 30.316078);
+        return row;
+    }
+}
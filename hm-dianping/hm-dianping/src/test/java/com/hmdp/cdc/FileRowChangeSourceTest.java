@@ -0,0 +1,60 @@
+package com.hmdp.cdc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 文件事件来源：只消费完整的行，未写完的最后一行等下次追加后再读，UTF-8内容不乱码
+ */
+class FileRowChangeSourceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsOnlyCompleteLines() throws Exception {
+        Path file = dir.resolve("changes.jsonl");
+        String first = "{\"table\":\"tb_shop\",\"type\":\"UPDATE\",\"after\":{\"id\":1,\"name\":\"茶餐厅\"}}";
+        String second = "{\"table\":\"tb_blog\",\"type\":\"DELETE\",\"before\":{\"id\":2}}";
+        // 第二行只写了一半
+        append(file, first + "\n" + second.substring(0, 20));
+
+        BlockingQueue<RowChangeEvent> events = new LinkedBlockingQueue<>();
+        FileRowChangeSource source = new FileRowChangeSource(file.toString(), 20);
+        source.start(events::add);
+        try {
+            RowChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("tb_shop", event.getTable());
+            assertEquals("茶餐厅", event.getAfter().get("name"));
+            assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+
+            // 补全第二行
+            append(file, second.substring(20) + "\n");
+            event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("tb_blog", event.getTable());
+            assertEquals(RowChangeEvent.DELETE, event.getType());
+            assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+        } finally {
+            source.stop();
+        }
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,53 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.utils.ShopSpatialIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 跨类型附近商铺：各类型按 (距离, id) 有序的结果k路归并后与整体排序相同，只取前limit条
+ */
+class ShopServiceImplTest {
+
+    @Test
+    void mergeMatchesGlobalSort() {
+        Random random = new Random(17);
+        List<List<ShopSpatialIndex.Hit>> streams = new ArrayList<>();
+        List<ShopSpatialIndex.Hit> all = new ArrayList<>();
+        long id = 1;
+        for (int type = 0; type < 6; type++) {
+            List<ShopSpatialIndex.Hit> stream = new ArrayList<>();
+            // 包含空的流；距离取整，不同类型之间有距离相同的店铺
+            int size = type == 3 ? 0 : random.nextInt(40);
+            for (int i = 0; i < size; i++) {
+                stream.add(new ShopSpatialIndex.Hit(id++, random.nextInt(500)));
+            }
+            Collections.sort(stream);
+            streams.add(stream);
+            all.addAll(stream);
+        }
+        Collections.sort(all);
+
+        for (int limit : new int[]{1, 10, all.size(), all.size() + 10}) {
+            List<ShopSpatialIndex.Hit> merged = ShopServiceImpl.mergeByDistance(streams, limit);
+            assertEquals(Math.min(limit, all.size()), merged.size());
+            for (int i = 0; i < merged.size(); i++) {
+                assertEquals(all.get(i).getId(), merged.get(i).getId());
+            }
+        }
+    }
+
+    @Test
+    void mergeHandlesNoStreams() {
+        assertTrue(ShopServiceImpl.mergeByDistance(Collections.emptyList(), 10).isEmpty());
+        assertTrue(ShopServiceImpl.mergeByDistance(Arrays.asList(Collections.emptyList(), Collections.emptyList()), 10).isEmpty());
+    }
+}
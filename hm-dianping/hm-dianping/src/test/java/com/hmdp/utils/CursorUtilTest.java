@@ -0,0 +1,44 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 分页游标：编码后原样解析，字段个数、类型或字面量不符的游标无效
+ */
+class CursorUtilTest {
+
+    @Test
+    void roundTripsKeysetCursors() {
+        assertArrayEquals(new String[]{"score", "45", "12"},
+                CursorUtil.parse(CursorUtil.encode("score", 45, 12L), "score:L:L"));
+        assertArrayEquals(new String[]{"id", "9223372036854775807", "9223372036854775807"},
+                CursorUtil.parse(CursorUtil.encode("id", Long.MAX_VALUE, Long.MAX_VALUE), "id:L:L"));
+        assertArrayEquals(new String[]{"1234.5678", "7", "20"},
+                CursorUtil.parse(CursorUtil.encode(1234.5678, 7L, 20), "D:L:L"));
+        assertArrayEquals(new String[]{"db", "15"}, CursorUtil.parse(CursorUtil.encode("db", 15L), "rank:I:L", "db:L"));
+        assertArrayEquals(new String[]{"rank", "180", "3"}, CursorUtil.parse(CursorUtil.encode("rank", 180, 3L), "rank:I:L", "db:L"));
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        // 空游标
+        assertNull(CursorUtil.parse(null, "db:L"));
+        assertNull(CursorUtil.parse("", "db:L"));
+        // 不是Base64
+        assertNull(CursorUtil.parse("!!!", "db:L"));
+        // 字段个数不同
+        assertNull(CursorUtil.parse(CursorUtil.encode("score", 45), "score:L:L"));
+        assertNull(CursorUtil.parse(CursorUtil.encode("score", 45, 12, 1), "score:L:L"));
+        // 排序字段与请求不同
+        assertNull(CursorUtil.parse(CursorUtil.encode("sold", 45, 12), "score:L:L"));
+        // 类型不符
+        assertNull(CursorUtil.parse(CursorUtil.encode("score", "4.5", 12), "score:L:L"));
+        assertNull(CursorUtil.parse(CursorUtil.encode("rank", 1L << 40, 3), "rank:I:L"));
+        assertNull(CursorUtil.parse(CursorUtil.encode("NaN", 7, 20), "D:L:L"));
+        assertNull(CursorUtil.parse(CursorUtil.encode("Infinity", 7, 20), "D:L:L"));
+        assertNull(CursorUtil.parse(CursorUtil.encode("", 7, 20), "D:L:L"));
+    }
+}
@@ -0,0 +1,140 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 环带查询：geohash编码与Redis一致，网格覆盖不漏掉环带内的任何成员，逐页查询的结果与暴力排序相同
+ */
+class GeoBandSearchTest {
+
+    @Test
+    void decodesRedisGeohashScore() {
+        // GEOADD Sicily 13.361389 38.115556 "Palermo" 的score和GEOPOS
+        long score = 3479099956230698L;
+        assertEquals(score, encode(13.361389, 38.115556));
+        double[] point = GeoBandSearch.decode(score);
+        assertEquals(13.36138933897018433, point[0], 1e-12);
+        assertEquals(38.11555639549629859, point[1], 1e-12);
+    }
+
+    @Test
+    void coverContainsEveryMemberInBand() {
+        Random random = new Random(42);
+        double x = 120.149192;
+        double y = 30.316078;
+        double[][] bands = {{0, 1000}, {3000, 3050}, {4000, 5000}, {4990, 5000}, {100, 4000}};
+        for (double[] band : bands) {
+            List<long[]> ranges = GeoBandSearch.cover(x, y, band[0], band[1]);
+            int inBand = 0;
+            for (int i = 0; i < 20000; i++) {
+                long score = encode(x + (random.nextDouble() - 0.5) * 0.12, y + (random.nextDouble() - 0.5) * 0.1);
+                double[] point = GeoBandSearch.decode(score);
+                double distance = ShopSpatialIndex.distance(x, y, point[0], point[1]);
+                if (distance < band[0] || distance > band[1]) {
+                    continue;
+                }
+                inBand++;
+                assertTrue(covered(ranges, score), "band " + band[0] + "-" + band[1] + " missed distance " + distance);
+            }
+            assertTrue(inBand > 0);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pagesMatchBruteForce() {
+        Random random = new Random(7);
+        double x = 120.149192;
+        double y = 30.316078;
+        double radius = 5000;
+        // 两个GEO集合，部分店铺坐标相同（距离相同），验证 (距离, id) 游标不跳过、不重复
+        Map<String, TreeMap<Long, List<Long>>> zsets = new HashMap<>();
+        List<ShopSpatialIndex.Hit> expected = new ArrayList<>();
+        for (long id = 1; id <= 3000; id++) {
+            long score = id % 10 == 0 ? encode(x + 0.01, y) : encode(x + (random.nextDouble() - 0.5) * 0.12,
+                    y + (random.nextDouble() - 0.5) * 0.1);
+            String key = id % 2 == 0 ? "geo:1" : "geo:2";
+            zsets.computeIfAbsent(key, k -> new TreeMap<>()).computeIfAbsent(score, k -> new ArrayList<>()).add(id);
+            double[] point = GeoBandSearch.decode(score);
+            double distance = ShopSpatialIndex.distance(x, y, point[0], point[1]);
+            if (distance <= radius) {
+                expected.add(new ShopSpatialIndex.Hit(id, distance));
+            }
+        }
+        Collections.sort(expected);
+
+        // 用内存中的有序map模拟pipeline中的ZRANGEBYSCORE
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        when(template.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> {
+            List<Object> results = new ArrayList<>();
+            RedisZSetCommands zSet = mock(RedisZSetCommands.class);
+            when(zSet.zRangeByScoreWithScores(any(byte[].class), any(RedisZSetCommands.Range.class))).thenAnswer(call -> {
+                String key = new String((byte[]) call.getArgument(0), StandardCharsets.UTF_8);
+                RedisZSetCommands.Range range = call.getArgument(1);
+                long min = ((Number) range.getMin().getValue()).longValue();
+                long max = ((Number) range.getMax().getValue()).longValue();
+                Set<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+                zsets.get(key).subMap(min, true, max, false).forEach((score, ids) ->
+                        ids.forEach(id -> tuples.add(new DefaultTypedTuple<>(id.toString(), (double) score))));
+                results.add(tuples);
+                return null;
+            });
+            RedisConnection connection = mock(RedisConnection.class);
+            when(connection.zSetCommands()).thenReturn(zSet);
+            ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+            return results;
+        });
+        GeoBandSearch search = new GeoBandSearch(template);
+
+        // 逐页查询直到结束，拼起来与暴力排序的结果相同
+        List<ShopSpatialIndex.Hit> paged = new ArrayList<>();
+        double lastDistance = -1;
+        long lastId = 0;
+        int size = 10;
+        while (true) {
+            List<ShopSpatialIndex.Hit> page = search.search(Arrays.asList("geo:1", "geo:2"),
+                    x, y, radius, lastDistance, lastId, paged.size(), size);
+            paged.addAll(page);
+            if (page.size() < size) {
+                break;
+            }
+            lastDistance = page.get(size - 1).getDistance();
+            lastId = page.get(size - 1).getId();
+        }
+        assertEquals(expected.size(), paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), paged.get(i).getId());
+            assertEquals(expected.get(i).getDistance(), paged.get(i).getDistance());
+        }
+    }
+
+    private static boolean covered(List<long[]> ranges, long score) {
+        for (long[] range : ranges) {
+            if (score >= range[0] && score < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 与Redis geohashEncodeWGS84相同
+    private static long encode(double lon, double lat) {
+        long latOffset = (long) ((lat + 85.05112878) / (2 * 85.05112878) * (1L << 26));
+        long lonOffset = (long) ((lon + 180) / 360 * (1L << 26));
+        return GeoBandSearch.interleave(latOffset, lonOffset);
+    }
+}
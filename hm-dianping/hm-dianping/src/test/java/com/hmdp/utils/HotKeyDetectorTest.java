@@ -0,0 +1,85 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 热点key探测：Count-Min Sketch只会高估不会低估，达到阈值即为热点，衰减后计数减半
+ */
+class HotKeyDetectorTest {
+
+    private final HotKeyDetector detector = new HotKeyDetector();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(detector, "enabled", true);
+        ReflectionTestUtils.setField(detector, "threshold", 100L);
+        ReflectionTestUtils.setField(detector, "width", 1024);
+        // 衰减由测试手动触发
+        ReflectionTestUtils.setField(detector, "decayIntervalSeconds", 3600L);
+        ReflectionTestUtils.setField(detector, "replicaTtlSeconds", 5L);
+        ReflectionTestUtils.setField(detector, "replicaMaximumSize", 100L);
+        ReflectionTestUtils.setField(detector, "meterRegistry", new SimpleMeterRegistry());
+        detector.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        detector.destroy();
+    }
+
+    @Test
+    void sketchNeverUnderestimates() {
+        // key数量为宽度的一半，每一行都有碰撞
+        int keys = 512;
+        for (int i = 0; i < keys; i++) {
+            for (int j = 0; j <= i % 10; j++) {
+                detector.record("cache:shop:" + i);
+            }
+        }
+        int exact = 0;
+        for (int i = 0; i < keys; i++) {
+            long estimate = detector.estimate("cache:shop:" + i);
+            assertTrue(estimate >= i % 10 + 1, "key " + i + " estimate " + estimate);
+            if (estimate == i % 10 + 1) {
+                exact++;
+            }
+        }
+        // 4行取最小值，只要有一行没有碰撞估计就是准确的，绝大部分key不受影响
+        assertTrue(exact > keys * 9 / 10, "exact " + exact);
+    }
+
+    @Test
+    void becomesHotAtThreshold() {
+        for (int i = 1; i < 100; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        assertFalse(detector.isHot("cache:shop:1"));
+        assertTrue(detector.record("cache:shop:1"));
+        assertTrue(detector.isHot("cache:shop:1"));
+        assertFalse(detector.isHot("cache:shop:2"));
+    }
+
+    @Test
+    void decayHalvesCounts() {
+        for (int i = 0; i < 80; i++) {
+            detector.record("cache:shop:1");
+        }
+        ReflectionTestUtils.invokeMethod(detector, "decay");
+        assertEquals(40, detector.estimate("cache:shop:1"));
+        ReflectionTestUtils.invokeMethod(detector, "decay");
+        assertEquals(20, detector.estimate("cache:shop:1"));
+        // 衰减后需要重新积累到阈值才是热点
+        for (int i = 0; i < 79; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+        assertTrue(detector.record("cache:shop:1"));
+    }
+}
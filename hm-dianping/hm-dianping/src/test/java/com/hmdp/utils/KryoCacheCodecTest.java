@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Kryo编解码：注册过的缓存类型可以往返，逻辑过期时间和重建耗时随数据保存，未注册的类型拒绝写入
+ */
+class KryoCacheCodecTest {
+
+    private final KryoCacheCodec codec = new KryoCacheCodec();
+
+    @Test
+    void roundTripsRegisteredTypes() {
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅").setTypeId(1L).setX(120.149192).setY(30.316078)
+                .setAvgPrice(80L).setSold(4215).setScore(37).setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10));
+        assertEquals(shop, codec.decode(codec.encode(shop), Shop.class));
+
+        Blog blog = new Blog().setId(5L).setTitle("无尽浪漫的夜晚").setIsLike(true).setLiked(3);
+        assertEquals(blog, codec.decode(codec.encode(blog), Blog.class));
+
+        List<ShopType> types = Arrays.asList(new ShopType().setId(1L).setName("美食").setSort(1),
+                new ShopType().setId(2L).setName("KTV").setSort(2));
+        assertEquals(types, codec.decodeList(codec.encode(types), ShopType.class));
+    }
+
+    @Test
+    void keepsLogicalExpireAndDelta() {
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 0, 0);
+        Shop shop = new Shop().setId(1L).setName("103茶餐厅");
+        RedisData data = codec.decodeWithExpire(codec.encodeWithExpire(new RedisData(expireTime, shop, 120L)), Shop.class);
+        assertEquals(expireTime, data.getExpireTime());
+        assertEquals(shop, data.getData());
+        assertEquals(120L, data.getDelta());
+
+        data = codec.decodeWithExpire(codec.encodeWithExpire(new RedisData(expireTime, shop)), Shop.class);
+        assertNull(data.getDelta());
+    }
+
+    @Test
+    void rejectsUnregisteredTypes() {
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(new StringBuilder("x")));
+    }
+}
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 店铺搜索：相邻两字的倒排表求交集后按相关度排序，拼音首字母可以命中店铺名，
+ * (相关度, id) 游标逐页查询的结果与一次查询相同，更新、删除后不再命中旧内容
+ */
+class ShopSearchEngineTest {
+
+    private final ShopSearchEngine engine = new ShopSearchEngine();
+
+    @Test
+    void intersectsTokensAndRanksByRelevance() {
+        engine.index(shop(1L, "103茶餐厅", "大关", "金华路锦昌文华苑29号", 37));
+        engine.index(shop(2L, "茶餐厅101", "拱宸桥", "上塘路1035号", 45));
+        engine.index(shop(3L, "海底捞火锅", "大关", "茶餐厅旁边", 49));
+        engine.index(shop(4L, "餐厅茶座", "运河上街", "台州路2号", 40));
+
+        // 名称前缀 > 名称包含 > 地址包含；"餐厅茶座"含有每个字但不连续，不命中
+        assertEquals(Arrays.asList(2L, 1L, 3L), ids(engine.search("茶餐厅", null, 0, 10)));
+        // 两个token的交集
+        assertEquals(Collections.singletonList(1L), ids(engine.search("锦昌", null, 0, 10)));
+        // 商圈，评分高的在前
+        assertEquals(Arrays.asList(3L, 1L), ids(engine.search("大关", null, 0, 10)));
+        // 忽略空白和大小写
+        assertEquals(Collections.singletonList(1L), ids(engine.search(" 103 茶 ", null, 0, 10)));
+        assertTrue(engine.search("烤肉", null, 0, 10).isEmpty());
+    }
+
+    @Test
+    void matchesNameByPinyinInitials() {
+        engine.index(shop(1L, "海底捞火锅", "大关", "", 49));
+        engine.index(shop(2L, "很多辣", "拱宸桥", "", 30));
+        engine.index(shop(3L, "喜茶", "拱宸桥", "", 40));
+        // 首字母相同时按评分
+        assertEquals(Arrays.asList(1L, 2L), ids(engine.search("hdl", null, 0, 10)));
+        assertEquals(Collections.singletonList(3L), ids(engine.search("XC", null, 0, 10)));
+        assertTrue(engine.search("hc", null, 0, 10).isEmpty());
+    }
+
+    @Test
+    void cursorPagesMatchSingleQuery() {
+        for (long id = 1; id <= 37; id++) {
+            // 评分相同的店铺相关度相同，按id排序
+            engine.index(shop(id, (id % 3 == 0 ? "火锅" : "老火锅") + id, "大关", "", (int) (id % 5) * 10));
+        }
+        List<ShopSearchEngine.Hit> all = engine.search("火锅", null, 0, 100);
+        assertEquals(37, all.size());
+
+        List<ShopSearchEngine.Hit> paged = new ArrayList<>();
+        ShopSearchEngine.Hit after = null;
+        while (true) {
+            List<ShopSearchEngine.Hit> page = engine.search("火锅", after, 0, 10);
+            paged.addAll(page);
+            if (page.size() < 10) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+        assertEquals(ids(all), ids(paged));
+        // 按页码跳过的结果相同
+        assertEquals(ids(all.subList(20, 30)), ids(engine.search("火锅", null, 20, 10)));
+    }
+
+    @Test
+    void updateAndRemoveDropStaleTokens() {
+        engine.index(shop(1L, "103茶餐厅", "大关", "", 37));
+        engine.index(shop(1L, "海底捞火锅", "大关", "", 37));
+        assertTrue(engine.search("茶餐厅", null, 0, 10).isEmpty());
+        assertEquals(Collections.singletonList(1L), ids(engine.search("火锅", null, 0, 10)));
+
+        engine.remove(1L);
+        assertTrue(engine.search("火锅", null, 0, 10).isEmpty());
+        assertTrue(engine.search("大关", null, 0, 10).isEmpty());
+    }
+
+    private static Shop shop(Long id, String name, String area, String address, int score) {
+        return new Shop().setId(id).setName(name).setArea(area).setAddress(address).setScore(score);
+    }
+
+    private static List<Long> ids(List<ShopSearchEngine.Hit> hits) {
+        return hits.stream().map(ShopSearchEngine.Hit::getId).collect(Collectors.toList());
+    }
+}
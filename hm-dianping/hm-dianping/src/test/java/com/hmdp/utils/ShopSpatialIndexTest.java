@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 空间索引：逐圈扩展在找满后提前停止，结果与暴力排序相同；游标分页不跳过、不重复；更新坐标后只出现在新网格
+ */
+class ShopSpatialIndexTest {
+
+    private static final double X = 120.149192;
+    private static final double Y = 30.316078;
+
+    @Test
+    void nearestMatchesBruteForce() {
+        ShopSpatialIndex index = new ShopSpatialIndex(0.01);
+        List<Shop> shops = randomShops(new Random(11), 3000);
+        shops.forEach(index::index);
+
+        Random random = new Random(3);
+        for (int q = 0; q < 200; q++) {
+            double x = X + (random.nextDouble() - 0.5) * 0.2;
+            double y = Y + (random.nextDouble() - 0.5) * 0.2;
+            double radius = 200 + random.nextInt(8000);
+            int limit = 1 + random.nextInt(30);
+            ShopSpatialIndex.Filter filter = q % 3 == 0 ? null : new ShopSpatialIndex.Filter()
+                    .setTypeId(q % 3 == 1 ? (long) (1 + q % 5) : null)
+                    .setMinAvgPrice(q % 2 == 0 ? 50L : null)
+                    .setMinScore(q % 4 == 0 ? 30 : null);
+            List<ShopSpatialIndex.Hit> expected = bruteForce(shops, x, y, radius, filter);
+            List<ShopSpatialIndex.Hit> actual = index.nearest(x, y, radius, filter, -1, 0, limit);
+            assertEquals(ids(expected.subList(0, Math.min(limit, expected.size()))), ids(actual), "query " + q);
+        }
+    }
+
+    @Test
+    void cursorPagesMatchBruteForce() {
+        ShopSpatialIndex index = new ShopSpatialIndex(0.01);
+        List<Shop> shops = randomShops(new Random(5), 2000);
+        // 部分店铺坐标相同，距离相同时按id排序
+        for (long id = 3001; id <= 3020; id++) {
+            shops.add(new Shop().setId(id).setTypeId(1L).setX(X + 0.01).setY(Y).setAvgPrice(80L).setScore(40));
+        }
+        shops.forEach(index::index);
+        List<ShopSpatialIndex.Hit> expected = bruteForce(shops, X, Y, 5000, null);
+
+        List<ShopSpatialIndex.Hit> paged = new ArrayList<>();
+        double lastDistance = -1;
+        long lastId = 0;
+        while (true) {
+            List<ShopSpatialIndex.Hit> page = index.nearest(X, Y, 5000, null, lastDistance, lastId, 7);
+            paged.addAll(page);
+            if (page.size() < 7) {
+                break;
+            }
+            lastDistance = page.get(page.size() - 1).getDistance();
+            lastId = page.get(page.size() - 1).getId();
+        }
+        assertEquals(ids(expected), ids(paged));
+    }
+
+    @Test
+    void reindexMovesShopBetweenCells() {
+        ShopSpatialIndex index = new ShopSpatialIndex(0.01);
+        index.index(new Shop().setId(1L).setTypeId(1L).setX(X).setY(Y));
+        index.index(new Shop().setId(1L).setTypeId(2L).setX(X + 0.05).setY(Y));
+        assertTrue(index.nearest(X, Y, 100, null, -1, 0, 10).isEmpty());
+        List<ShopSpatialIndex.Hit> hits = index.nearest(X + 0.05, Y, 100, null, -1, 0, 10);
+        assertEquals(Collections.singletonList(1L), ids(hits));
+        assertTrue(index.nearest(X + 0.05, Y, 100, new ShopSpatialIndex.Filter().setTypeId(1L), -1, 0, 10).isEmpty());
+
+        // 坐标为空时移除
+        index.index(new Shop().setId(1L).setTypeId(2L));
+        assertTrue(index.nearest(X + 0.05, Y, 100, null, -1, 0, 10).isEmpty());
+    }
+
+    private static List<Shop> randomShops(Random random, int count) {
+        List<Shop> shops = new ArrayList<>(count);
+        for (long id = 1; id <= count; id++) {
+            shops.add(new Shop().setId(id).setTypeId(1L + random.nextInt(5))
+                    .setX(X + (random.nextDouble() - 0.5) * 0.2).setY(Y + (random.nextDouble() - 0.5) * 0.2)
+                    .setAvgPrice((long) random.nextInt(200)).setScore(random.nextInt(51)));
+        }
+        return shops;
+    }
+
+    private static List<ShopSpatialIndex.Hit> bruteForce(List<Shop> shops, double x, double y, double radius,
+                                                         ShopSpatialIndex.Filter filter) {
+        List<ShopSpatialIndex.Hit> hits = new ArrayList<>();
+        for (Shop shop : shops) {
+            if (filter != null && (filter.getTypeId() != null && !filter.getTypeId().equals(shop.getTypeId())
+                    || filter.getMinAvgPrice() != null && shop.getAvgPrice() < filter.getMinAvgPrice()
+                    || filter.getMinScore() != null && shop.getScore() < filter.getMinScore())) {
+                continue;
+            }
+            double distance = ShopSpatialIndex.distance(x, y, shop.getX(), shop.getY());
+            if (distance <= radius) {
+                hits.add(new ShopSpatialIndex.Hit(shop.getId(), distance));
+            }
+        }
+        Collections.sort(hits);
+        return hits;
+    }
+
+    private static List<Long> ids(List<ShopSpatialIndex.Hit> hits) {
+        return hits.stream().map(ShopSpatialIndex.Hit::getId).collect(Collectors.toList());
+    }
+}